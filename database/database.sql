@@ -17,6 +17,40 @@ DROP DATABASE IF EXISTS `lectio`;
 CREATE DATABASE IF NOT EXISTS `lectio` /*!40100 DEFAULT CHARACTER SET utf8 */;
 USE `lectio`;
 
+-- Volcando estructura para tabla lectio.book_genres
+DROP TABLE IF EXISTS `book_genres`;
+CREATE TABLE IF NOT EXISTS `book_genres` (
+  `book_id` int(11) unsigned NOT NULL,
+  `genre_id` int(11) unsigned NOT NULL,
+  PRIMARY KEY (`book_id`,`genre_id`),
+  KEY `genre_id_book_id` (`genre_id`,`book_id`),
+  CONSTRAINT `book_genres_book_id_fk` FOREIGN KEY (`book_id`) REFERENCES `books` (`id`) ON DELETE CASCADE ON UPDATE CASCADE,
+  CONSTRAINT `book_genres_genre_id_fk` FOREIGN KEY (`genre_id`) REFERENCES `genres` (`id`) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- Volcando datos para la tabla lectio.book_genres: ~18 rows (aproximadamente)
+/*!40000 ALTER TABLE `book_genres` DISABLE KEYS */;
+REPLACE INTO `book_genres` (`book_id`, `genre_id`) VALUES
+	(1, 1),
+	(1, 2),
+	(2, 1),
+	(2, 3),
+	(3, 1),
+	(3, 3),
+	(4, 1),
+	(4, 3),
+	(5, 1),
+	(5, 3),
+	(6, 1),
+	(6, 3),
+	(7, 1),
+	(7, 3),
+	(8, 1),
+	(8, 3),
+	(8, 4),
+	(8, 5);
+/*!40000 ALTER TABLE `book_genres` ENABLE KEYS */;
+
 -- Volcando estructura para tabla lectio.booklists
 DROP TABLE IF EXISTS `booklists`;
 CREATE TABLE IF NOT EXISTS `booklists` (
@@ -61,7 +95,11 @@ CREATE TABLE IF NOT EXISTS `books` (
   `genres` varchar(255) NOT NULL,
   `synopsis` varchar(20000) DEFAULT 'There are no synopsis.',
   PRIMARY KEY (`id`),
-  UNIQUE KEY `isbn` (`isbn`)
+  UNIQUE KEY `isbn` (`isbn`),
+  FULLTEXT KEY `books_title_ft` (`title`),
+  FULLTEXT KEY `books_author_ft` (`author`),
+  FULLTEXT KEY `books_publisher_ft` (`publisher`),
+  FULLTEXT KEY `books_synopsis_ft` (`synopsis`)
 ) ENGINE=InnoDB AUTO_INCREMENT=10 DEFAULT CHARSET=utf8;
 
 -- Volcando datos para la tabla lectio.books: ~8 rows (aproximadamente)
@@ -141,6 +179,25 @@ REPLACE INTO `club_subscribers` (`club_id`, `user_id`) VALUES
 	(23, 33);
 /*!40000 ALTER TABLE `club_subscribers` ENABLE KEYS */;
 
+-- Volcando estructura para tabla lectio.genres
+DROP TABLE IF EXISTS `genres`;
+CREATE TABLE IF NOT EXISTS `genres` (
+  `id` int(11) unsigned NOT NULL AUTO_INCREMENT,
+  `name` varchar(255) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `name` (`name`)
+) ENGINE=InnoDB AUTO_INCREMENT=6 DEFAULT CHARSET=utf8;
+
+-- Volcando datos para la tabla lectio.genres: ~5 rows (aproximadamente)
+/*!40000 ALTER TABLE `genres` DISABLE KEYS */;
+REPLACE INTO `genres` (`id`, `name`) VALUES
+	(1, 'Science fiction'),
+	(2, 'Fantasy'),
+	(3, 'Adventure'),
+	(4, 'Action'),
+	(5, 'Historical fiction');
+/*!40000 ALTER TABLE `genres` ENABLE KEYS */;
+
 -- Volcando estructura para tabla lectio.reviews
 DROP TABLE IF EXISTS `reviews`;
 CREATE TABLE IF NOT EXISTS `reviews` (
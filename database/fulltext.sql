@@ -0,0 +1,9 @@
+-- FULLTEXT indexes used by lectio.search.backend=fulltext, for databases created before they were
+-- added to database.sql. Rebuilds the books table, run it outside peak hours.
+USE `lectio`;
+
+ALTER TABLE `books`
+  ADD FULLTEXT KEY `books_title_ft` (`title`),
+  ADD FULLTEXT KEY `books_author_ft` (`author`),
+  ADD FULLTEXT KEY `books_publisher_ft` (`publisher`),
+  ADD FULLTEXT KEY `books_synopsis_ft` (`synopsis`);
@@ -0,0 +1,35 @@
+#!/usr/bin/env bash
+# Time to first request of the default startup, the fast-startup profile, and the profile with the
+# AppCDS archive. Prints the median and the best of RUNS starts of each.
+set -euo pipefail
+source "$(dirname "$0")/common.sh"
+
+RUNS="${RUNS:-5}"
+CP="$(classpath)"
+
+measure() {
+    local name="$1" profiles="$2"
+    shift 2
+    local times=()
+    for ((i = 0; i < RUNS; i++)); do
+        local start
+        start=$(date +%s%N)
+        java "$@" -Dserver.port="$PORT" -Dspring.profiles.active="$profiles" -cp "$CP" "$(main_class)" > /dev/null 2>&1 &
+        local pid=$!
+        times+=("$(wait_first_request "$start")")
+        kill $pid
+        wait $pid 2>/dev/null || true
+    done
+    local sorted
+    sorted=($(printf '%s\n' "${times[@]}" | sort -n))
+    printf '%-28s median %6d ms   best %6d ms\n' "$name" "${sorted[$((RUNS / 2))]}" "${sorted[0]}"
+}
+
+BASE_PROFILES="${BASE_PROFILES:-default}"
+measure "default" "$BASE_PROFILES" -Xshare:auto
+measure "fast-startup" "$BASE_PROFILES,$PROFILES" -Xshare:auto
+if [ -f "$ARCHIVE" ]; then
+    measure "fast-startup + AppCDS" "$BASE_PROFILES,$PROFILES" -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto
+else
+    echo "No AppCDS archive, run train.sh first"
+fi
@@ -0,0 +1,18 @@
+#!/usr/bin/env bash
+# Builds the application with the Spring component index and explodes the jar for AppCDS.
+set -euo pipefail
+source "$(dirname "$0")/common.sh"
+
+cd "$ROOT"
+./mvnw -B -q -Pfast-startup -DskipTests package
+
+JAR="$(ls target/*.jar | grep -v original | head -1)"
+rm -rf "$APP"
+mkdir -p "$APP/lib" "$OUT/exploded"
+(cd "$OUT/exploded" && rm -rf ./* && jar xf "$JAR")
+cp "$OUT/exploded"/BOOT-INF/lib/*.jar "$APP/lib/"
+jar cf "$APP/classes.jar" -C "$OUT/exploded/BOOT-INF/classes" .
+sed -n 's/^Start-Class: *//p' "$OUT/exploded/META-INF/MANIFEST.MF" | tr -d '\r' > "$APP/main-class"
+rm -rf "$OUT/exploded" "$ARCHIVE" "$CLASS_LIST"
+
+echo "Built $APP, now run train.sh"
@@ -0,0 +1,49 @@
+#!/usr/bin/env bash
+# Shared settings of the fast startup scripts. Everything is written to target/fast-startup.
+
+ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")/../.." && pwd)"
+OUT="$ROOT/target/fast-startup"
+APP="$OUT/app"
+ARCHIVE="$OUT/lectio.jsa"
+CLASS_LIST="$OUT/classes.lst"
+
+PORT="${PORT:-8080}"
+PROFILES="${PROFILES:-fast-startup}"
+# Served by the security chain and a controller; with a token the request is authenticated too
+FIRST_REQUEST_URL="${FIRST_REQUEST_URL:-http://localhost:$PORT/api/books/1}"
+
+java_major() {
+    java -version 2>&1 | head -1 | sed -E 's/.*version "(1\.)?([0-9]+).*/\2/'
+}
+
+# CDS only archives classes loaded from jar files with the very same class path at dump and run time,
+# so the fat jar is exploded into the application classes as a jar plus its libraries
+classpath() {
+    echo "$(cd "$APP" && ls lib/*.jar | sort | sed "s|^|$APP/|" | tr '\n' ':')$APP/classes.jar"
+}
+
+main_class() {
+    cat "$APP/main-class"
+}
+
+java_args() {
+    echo "-Dserver.port=$PORT -Dspring.profiles.active=$PROFILES"
+}
+
+# GET with the JWT in TOKEN when there is one
+request() {
+    if [ -n "${TOKEN:-}" ]; then
+        curl -s -o /dev/null -H "Authorization: Bearer $TOKEN" "$1"
+    else
+        curl -s -o /dev/null "$1"
+    fi
+}
+
+# Prints the milliseconds until FIRST_REQUEST_URL answers, any status counts
+wait_first_request() {
+    local start="$1"
+    until request "$FIRST_REQUEST_URL"; do
+        sleep 0.05
+    done
+    echo $(( ($(date +%s%N) - start) / 1000000 ))
+}
@@ -0,0 +1,8 @@
+#!/usr/bin/env bash
+# Starts the application with the fast startup profile and, when train.sh made one, the AppCDS archive.
+set -euo pipefail
+source "$(dirname "$0")/common.sh"
+
+CDS=()
+[ -f "$ARCHIVE" ] && CDS=(-XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto)
+exec java "${CDS[@]}" $(java_args) ${JAVA_OPTS:-} -cp "$(classpath)" "$(main_class)"
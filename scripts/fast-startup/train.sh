@@ -0,0 +1,32 @@
+#!/usr/bin/env bash
+# Training run: starts the application, waits for the first request plus the warm up, and stops it,
+# dumping the classes it loaded into the AppCDS archive. Needs the database of the chosen profiles.
+set -euo pipefail
+source "$(dirname "$0")/common.sh"
+
+TRAINING_SECONDS="${TRAINING_SECONDS:-20}"
+MAJOR="$(java_major)"
+CP="$(classpath)"
+
+if [ "$MAJOR" -ge 13 ]; then
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" $(java_args) -cp "$CP" "$(main_class)" &
+else
+    java -Xshare:off -XX:DumpLoadedClassList="$CLASS_LIST" $(java_args) -cp "$CP" "$(main_class)" &
+fi
+PID=$!
+trap 'kill $PID 2>/dev/null || true' EXIT
+
+echo "First request after $(wait_first_request "$(date +%s%N)") ms"
+# Lets the lazy beans warm up and the usual requests load their classes
+for url in ${TRAINING_URLS:-}; do
+    request "$url" || true
+done
+sleep "$TRAINING_SECONDS"
+kill $PID
+wait $PID || true
+trap - EXIT
+
+if [ "$MAJOR" -lt 13 ]; then
+    java -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$ARCHIVE" -cp "$CP"
+fi
+echo "Archive written to $ARCHIVE ($(du -h "$ARCHIVE" | cut -f1))"
@@ -0,0 +1,108 @@
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.search.FuzzyIndex;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds a FuzzyIndex over a generated catalog of each size and measures, in process, the queries per
+ * second of searches with typos at each max_edits and the size of the index: the estimate of stats()
+ * and the heap actually taken by building it, which is only meaningful above a few MB. Run by
+ * benchmark.sh.
+ *
+ *   java -cp target/classes:<dependencies> scripts/fuzzy-benchmark/FuzzyBenchmark.java 1000 10000 100000
+ */
+public class FuzzyBenchmark {
+
+    private static final String[] WORDS = {"rimas", "leyendas", "historia", "todo", "padre", "rico", "delirios",
+            "grandeza", "teoria", "universo", "noche", "viento", "sombra", "ciudad", "camino", "tiempo", "mar",
+            "fuego", "silencio", "memoria"};
+    private static final String[] NAMES = {"gustavo", "adolfo", "becquer", "gabriel", "garcia", "marquez", "isabel",
+            "allende", "miguel", "cervantes", "benito", "perez", "galdos", "rosalia", "castro", "emilia", "pardo"};
+    // Each with one or two typos
+    private static final String[] QUERIES = {"rimas y leyndas", "delirio de grandesa", "becqer", "garcia marqez",
+            "teoria del unverso", "sombra del vento"};
+
+    private static final int THREADS = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+    private static final long MILLIS = Long.getLong("millis", 2000);
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-10s %12s %14s %14s %10s %10s %10s%n",
+                "books", "build ms", "estimated MB", "measured MB", "edits=0/s", "edits=1/s", "edits=2/s");
+        // Loads the classes the builds use, or the first heap measure would count them
+        build(1000);
+        for (String arg : args) {
+            int size = Integer.parseInt(arg);
+            long heap = usedHeap();
+            long start = System.nanoTime();
+            FuzzyIndex index = build(size);
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+            long measured = usedHeap() - heap;
+            Map<String, Object> stats = index.stats();
+
+            List<Long> rates = new ArrayList<>();
+            for (int edits = 0; edits <= 2; edits++)
+                rates.add(queriesPerSecond(index, edits));
+            System.out.printf("%-10d %12d %14.1f %14.1f %10d %10d %10d%n", size, buildMillis,
+                    ((Number) stats.get("estimatedBytes")).longValue() / 1e6, measured / 1e6,
+                    rates.get(0), rates.get(1), rates.get(2));
+        }
+    }
+
+    private static FuzzyIndex build(int size) throws ReflectiveOperationException {
+        FuzzyIndex index = new FuzzyIndex();
+        Field id = Book.class.getDeclaredField("id");
+        id.setAccessible(true);
+        for (int n = 1; n <= size; n++) {
+            Book book = new Book(word(n) + " " + word(n / 20) + " " + word(n / 400) + " " + n,
+                    name(n * 7) + " " + name(n * 11), "Editorial " + n % 53, 100, null, new String[0], null);
+            id.setLong(book, n);
+            index.addBook(book);
+        }
+        return index;
+    }
+
+    private static long queriesPerSecond(FuzzyIndex index, int edits) throws InterruptedException {
+        // Warm up, so the JIT has compiled the search before it is timed
+        long warmUp = System.nanoTime() + 500_000_000L;
+        for (int i = 0; System.nanoTime() < warmUp; i++)
+            index.search(QUERIES[i % QUERIES.length], edits, 10);
+
+        AtomicLong queries = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long end = System.nanoTime() + MILLIS * 1_000_000L;
+        for (int t = 0; t < THREADS; t++) {
+            int first = t;
+            new Thread(() -> {
+                long count = 0;
+                for (int i = first; System.nanoTime() < end; i++, count++)
+                    index.search(QUERIES[i % QUERIES.length], edits, 10);
+                queries.addAndGet(count);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        return queries.get() * 1000 / MILLIS;
+    }
+
+    private static String word(int n) {
+        return WORDS[Math.floorMod(n, WORDS.length)];
+    }
+
+    private static String name(int n) {
+        return NAMES[Math.floorMod(n, NAMES.length)];
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,20 @@
+#!/usr/bin/env bash
+# Queries per second of the fuzzy book search and the size of its index across catalog sizes. Builds a
+# FuzzyIndex in process over generated catalogs (see FuzzyBenchmark.java), so what is timed is the
+# index and not HTTP, and no server or database is needed.
+#
+#   SIZES="1000 10000 100000 1000000" THREADS=4 scripts/fuzzy-benchmark/benchmark.sh
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/../.." && pwd)"
+OUT="$ROOT/target/fuzzy-benchmark"
+SIZES="${SIZES:-1000 10000 100000 1000000}"
+THREADS="${THREADS:-$(nproc)}"
+MILLIS="${MILLIS:-2000}"
+
+mkdir -p "$OUT"
+(cd "$ROOT" && mvn -q -B compile dependency:build-classpath -Dmdep.outputFile="$OUT/classpath.txt")
+
+# shellcheck disable=SC2086
+java -Xmx"${HEAP:-4g}" -Dthreads="$THREADS" -Dmillis="$MILLIS" -cp "$ROOT/target/classes:$(cat "$OUT/classpath.txt")" \
+    "$ROOT/scripts/fuzzy-benchmark/FuzzyBenchmark.java" $SIZES
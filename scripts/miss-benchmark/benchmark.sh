@@ -0,0 +1,67 @@
+#!/usr/bin/env bash
+# Throughput of requests that miss (unknown ids, ids that aren't numbers, clubs that don't exist) next
+# to the matching request that hits. Misses used to throw on the way out (Optional.get(),
+# NumberFormatException, NoSuchElementException) and are now answered from a lookup, so both columns
+# should be close. Load comes from ApacheBench over keep-alive connections (ab -k, apache2-utils), so
+# what is measured is the server and not a connection or a process per request. Run it against a server
+# started with lectio.ratelimit.enabled=false, or most requests end up as 429.
+#
+#   EMAIL=jose@email.com PASSWORD=1234 REQUESTS=20000 CONCURRENCY=32 scripts/miss-benchmark/benchmark.sh
+set -euo pipefail
+
+URL="${URL:-http://localhost:8080}"
+REQUESTS="${REQUESTS:-20000}"
+CONCURRENCY="${CONCURRENCY:-32}"
+MISSING_ID="${MISSING_ID:-999999999}"
+
+command -v ab > /dev/null || { echo "ab not found, install apache2-utils" >&2; exit 1; }
+
+TOKEN=$(curl -s -D - -o /dev/null -H 'Content-Type: application/json' \
+    -d "{\"email\": \"${EMAIL:?}\", \"password\": \"${PASSWORD:?}\"}" "$URL/api/login" \
+    | tr -d '\r' | sed -n 's/^Authorization: //Ip')
+if [ -z "$TOKEN" ]; then
+    echo "Couldn't log in as $EMAIL" >&2
+    exit 1
+fi
+
+# What the hits ask for: the logged in user, and unless given, the first book and the first club
+first() {
+    curl -s -H "Authorization: $TOKEN" "$URL$2" | grep -o "\"$1\" *: *[0-9]*" | head -n 1 | grep -o '[0-9]*$' || true
+}
+USER_ID="${USER_ID:-$(first user_id "/api/users/$EMAIL")}"
+BOOK_ID="${BOOK_ID:-$(first id "/api/books?limit=1&offset=0&fields=id")}"
+CLUB_ID="${CLUB_ID:-$(first id "/api/clubs/discover?limit=1")}"
+if [ -z "$USER_ID" ] || [ -z "$BOOK_ID" ] || [ -z "$CLUB_ID" ]; then
+    echo "Couldn't find a user, book and club to hit, set USER_ID, BOOK_ID and CLUB_ID" >&2
+    exit 1
+fi
+
+# Fires REQUESTS requests of the given method and path, CONCURRENCY at a time over keep-alive
+# connections, and prints "<req/s> <non-2xx>"
+load() {
+    local method="$1" path="$2"
+    ab -k -q -n "$REQUESTS" -c "$CONCURRENCY" -m "$method" -H "Authorization: $TOKEN" "$URL$path" 2> /dev/null \
+        | awk '/^Requests per second:/ { rate = $4 } /^Non-2xx responses:/ { errors = $3 }
+               END { printf "%d %d", rate, errors }'
+}
+
+run() {
+    local name="$1" method="$2" miss="$3" hit="$4"
+    local miss_rate miss_errors hit_rate hit_errors
+    read -r miss_rate miss_errors <<< "$(load "$method" "$miss")"
+    read -r hit_rate hit_errors <<< "$(load "$method" "$hit")"
+    printf '%-24s %12s %12s %8s %12s %12s\n' "$name" "$miss_rate" "$miss_errors" \
+        "$(( miss_rate * 100 / (hit_rate > 0 ? hit_rate : 1) ))%" "$hit_rate" "$hit_errors"
+}
+
+printf '%-24s %12s %12s %8s %12s %12s\n' "request" "miss req/s" "miss non-2xx" "of hit" "hit req/s" "hit non-2xx"
+run "book, unknown id" GET "/api/books/$MISSING_ID" "/api/books/$BOOK_ID"
+run "book, id not a number" GET "/api/books/abc" "/api/books/$BOOK_ID"
+run "user, unknown email" GET "/api/users/nobody@lectio.invalid" "/api/users/$EMAIL"
+run "user, unknown id" GET "/api/users/$MISSING_ID" "/api/users/$USER_ID"
+run "books, bad ids" GET "/api/books?ids=$BOOK_ID,x,$BOOK_ID" "/api/books?ids=$BOOK_ID,$BOOK_ID"
+run "list, unknown name" GET "/api/users/$USER_ID/list/$MISSING_ID" "/api/users/$USER_ID/list/Pending"
+# The hit is a club that exists: after the first request the user is already subscribed, 409 like a miss
+# but past the lookup of the club
+run "subscribe, unknown club" POST "/api/clubs/subscribe?user_id=$USER_ID&club_id=$MISSING_ID" \
+    "/api/clubs/subscribe?user_id=$USER_ID&club_id=$CLUB_ID"
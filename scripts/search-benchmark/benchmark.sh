@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+# Compares the LIKE and the FULLTEXT search backends across catalog sizes. Fills a scratch database
+# (lectio_search_benchmark, dropped at the end) with generated books and times the queries each
+# backend runs for the same filters, as BookRepository and BookRepositoryCustomImpl build them.
+#
+#   DB_USER=root DB_PASSWORD=root SIZES="1000 10000 100000 1000000" scripts/search-benchmark/benchmark.sh
+set -euo pipefail
+
+SIZES="${SIZES:-1000 10000 100000 1000000}"
+REPEAT="${REPEAT:-20}"
+DB="lectio_search_benchmark"
+MYSQL=(mysql -h "${DB_HOST:-127.0.0.1}" -P "${DB_PORT:-3306}" -u "${DB_USER:-root}" "-p${DB_PASSWORD:-root}" --batch --skip-column-names)
+
+sql() {
+    "${MYSQL[@]}" "$DB" -e "$1"
+}
+
+# Milliseconds per run of the query, averaged over REPEAT runs after one warm up run. Includes starting
+# the client, which is the same for both backends
+time_query() {
+    local query="$1"
+    sql "$query" > /dev/null
+    local start
+    start=$(date +%s%N)
+    for ((i = 0; i < REPEAT; i++)); do
+        sql "$query" > /dev/null
+    done
+    echo $(( ($(date +%s%N) - start) / 1000000 / REPEAT ))
+}
+
+"${MYSQL[@]}" -e "DROP DATABASE IF EXISTS $DB; CREATE DATABASE $DB DEFAULT CHARACTER SET utf8"
+trap '"${MYSQL[@]}" -e "DROP DATABASE IF EXISTS $DB"' EXIT
+
+sql "CREATE TABLE words (id int PRIMARY KEY, word varchar(20) NOT NULL)"
+sql "INSERT INTO words VALUES (0,'rimas'),(1,'leyendas'),(2,'historia'),(3,'todo'),(4,'padre'),(5,'rico'),
+     (6,'delirios'),(7,'grandeza'),(8,'teoria'),(9,'universo'),(10,'noche'),(11,'viento'),(12,'sombra'),
+     (13,'ciudad'),(14,'camino'),(15,'tiempo'),(16,'mar'),(17,'fuego'),(18,'silencio'),(19,'memoria')"
+
+printf '%-10s %-28s %10s %10s\n' "books" "filter" "like ms" "fulltext ms"
+for size in $SIZES; do
+    sql "DROP TABLE IF EXISTS Books"
+    sql "CREATE TABLE Books (id int unsigned NOT NULL AUTO_INCREMENT PRIMARY KEY, title varchar(255) NOT NULL,
+         author varchar(255) NOT NULL, publisher varchar(255) NOT NULL, synopsis varchar(20000)) ENGINE=InnoDB"
+    sql "SET SESSION max_recursive_iterations = $size;
+         INSERT INTO Books (title, author, publisher, synopsis)
+         WITH RECURSIVE seq (n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < $size)
+         SELECT CONCAT((SELECT word FROM words WHERE id = n % 20), ' ', (SELECT word FROM words WHERE id = (n DIV 20) % 20),
+                       ' ', (SELECT word FROM words WHERE id = (n DIV 400) % 20), ' ', n),
+                CONCAT('Autor ', (SELECT word FROM words WHERE id = (n * 7) % 20), ' ', n % 997),
+                CONCAT('Editorial ', n % 53),
+                CONCAT('Sinopsis de ', (SELECT word FROM words WHERE id = (n * 3) % 20), ' y ', (SELECT word FROM words WHERE id = (n * 11) % 20))
+         FROM seq"
+    sql "ALTER TABLE Books ADD FULLTEXT KEY books_title_ft (title), ADD FULLTEXT KEY books_author_ft (author),
+         ADD FULLTEXT KEY books_publisher_ft (publisher), ADD FULLTEXT KEY books_synopsis_ft (synopsis)"
+
+    while IFS='|' read -r name like fulltext; do
+        printf '%-10s %-28s %10s %10s\n' "$size" "$name" "$(time_query "$like")" "$(time_query "$fulltext")"
+    done <<SQL
+title=leyendas|SELECT * FROM Books WHERE title LIKE '%leyendas%' LIMIT 10 OFFSET 0|SELECT * FROM Books WHERE MATCH(title) AGAINST ('+leyendas*' IN BOOLEAN MODE) ORDER BY MATCH(title) AGAINST ('+leyendas*' IN BOOLEAN MODE) * 4 + MATCH(synopsis) AGAINST ('leyendas') DESC, id LIMIT 10 OFFSET 0
+title=rimas leyendas, count|SELECT COUNT(*) FROM Books WHERE title LIKE '%rimas leyendas%'|SELECT COUNT(*) FROM Books WHERE MATCH(title) AGAINST ('+rimas* +leyendas*' IN BOOLEAN MODE)
+title=padre&author=autor rico|SELECT * FROM Books WHERE title LIKE '%padre%' AND author LIKE '%autor rico%' AND publisher LIKE '%%' LIMIT 10 OFFSET 0|SELECT * FROM Books WHERE MATCH(title) AGAINST ('+padre*' IN BOOLEAN MODE) AND MATCH(author) AGAINST ('+autor* +rico*' IN BOOLEAN MODE) ORDER BY MATCH(title) AGAINST ('+padre*' IN BOOLEAN MODE) * 4 + MATCH(author) AGAINST ('+autor* +rico*' IN BOOLEAN MODE) * 2 + MATCH(synopsis) AGAINST ('padre') DESC, id LIMIT 10 OFFSET 0
+title=memoria, page 50|SELECT * FROM Books WHERE title LIKE '%memoria%' LIMIT 10 OFFSET 500|SELECT * FROM Books WHERE MATCH(title) AGAINST ('+memoria*' IN BOOLEAN MODE) ORDER BY MATCH(title) AGAINST ('+memoria*' IN BOOLEAN MODE) * 4 + MATCH(synopsis) AGAINST ('memoria') DESC, id LIMIT 10 OFFSET 500
+SQL
+done
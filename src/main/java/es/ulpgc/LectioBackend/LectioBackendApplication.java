@@ -2,8 +2,10 @@ package es.ulpgc.LectioBackend;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class LectioBackendApplication {
     public static void main(String[] args) {
         SpringApplication.run(LectioBackendApplication.class, args);
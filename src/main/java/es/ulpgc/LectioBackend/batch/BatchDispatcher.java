@@ -0,0 +1,258 @@
+package es.ulpgc.LectioBackend.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import es.ulpgc.LectioBackend.security.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the calls of a batch through the DispatcherServlet, so they reach the same controllers and
+ * interceptors as any request, but not the filters: the batch request was already authenticated and
+ * its JWT isn't checked again for every call. Calls are still rate limited one by one.
+ * Consecutive GET calls are independent and run in parallel on a bounded pool; any other call runs
+ * alone, in order, after the calls before it have finished.
+ */
+@Service
+public class BatchDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchDispatcher.class);
+
+    private static final List<String> METHODS = Arrays.asList("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE");
+    private static final String BATCH_PATH = "/api/batch";
+    private static final List<String> ENCODED_SEPARATORS = Arrays.asList("%2e", "%2f", "%5c", "%25");
+
+    /**
+     * Request attribute of every call, a batch can't be one of them
+     */
+    public static final String SUB_REQUEST = BatchDispatcher.class.getName() + ".SUB_REQUEST";
+
+    @Autowired
+    private DispatcherServlet dispatcherServlet;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Value("${lectio.batch.max-requests:20}")
+    private int maxRequests;
+
+    @Value("${lectio.batch.threads:8}")
+    private int threads;
+
+    @Value("${lectio.batch.queue-size:64}")
+    private int queueSize;
+
+    @Value("${lectio.batch.timeout-ms:30000}")
+    private long timeout;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong parallelCalls = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger count = new AtomicInteger();
+        // When the pool is full the calls run on the request thread, which slows the batch down instead of failing it
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "batch-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @return one result per call, in the same order
+     */
+    public List<BatchResult> execute(HttpServletRequest request, HttpServletResponse response, List<BatchRequest> requests) {
+        batches.incrementAndGet();
+        calls.addAndGet(requests.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        String client = client(request);
+        List<BatchResult> results = new ArrayList<>(requests.size());
+
+        int i = 0;
+        while (i < requests.size()) {
+            int end = i;
+            while (end < requests.size() && isRead(requests.get(end)))
+                end++;
+            if (end - i > 1) {
+                results.addAll(executeParallel(request, response, requests.subList(i, end), client, deadline));
+                i = end;
+            } else {
+                results.add(dispatch(request, response, requests.get(i), client));
+                i++;
+            }
+        }
+        return results;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batches", batches.get());
+        stats.put("calls", calls.get());
+        stats.put("parallelCalls", parallelCalls.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        return stats;
+    }
+
+    private List<BatchResult> executeParallel(HttpServletRequest request, HttpServletResponse response,
+                                              List<BatchRequest> reads, String client, long deadline) {
+        parallelCalls.addAndGet(reads.size());
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        List<Future<BatchResult>> futures = new ArrayList<>(reads.size());
+        for (BatchRequest read : reads) {
+            futures.add(executor.submit(() -> {
+                SecurityContext previous = SecurityContextHolder.getContext();
+                SecurityContextHolder.setContext(securityContext);
+                try {
+                    return dispatch(request, response, read, client);
+                } finally {
+                    SecurityContextHolder.setContext(previous);
+                }
+            }));
+        }
+
+        List<BatchResult> results = new ArrayList<>(reads.size());
+        for (Future<BatchResult> future : futures) {
+            try {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timeouts.incrementAndGet();
+                results.add(error(HttpStatus.GATEWAY_TIMEOUT, "The batch took too long"));
+            } catch (ExecutionException e) {
+                results.add(error(HttpStatus.INTERNAL_SERVER_ERROR, "There was a problem, couldn't run the request"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                results.add(error(HttpStatus.SERVICE_UNAVAILABLE, "The batch was interrupted"));
+            }
+        }
+        return results;
+    }
+
+    private BatchResult dispatch(HttpServletRequest request, HttpServletResponse response, BatchRequest call, String client) {
+        String method = (call.getMethod() == null) ? "GET" : call.getMethod().toUpperCase(Locale.ROOT);
+        String path = call.getPath();
+        if (!METHODS.contains(method) || !isNormalized(path) || !path.startsWith("/api/") || path.startsWith(BATCH_PATH))
+            return error(HttpStatus.BAD_REQUEST, "Invalid method or path");
+
+        if (rateLimiter.isEnabled()) {
+            long wait = rateLimiter.acquire(rateLimiter.group(path), client);
+            if (wait > 0)
+                return error(HttpStatus.TOO_MANY_REQUESTS, "Too many requests, try again in " + (wait + 999) / 1000 + " seconds");
+        }
+
+        try {
+            byte[] body = (call.getBody() == null || call.getBody().isNull()) ? null : objectMapper.writeValueAsBytes(call.getBody());
+            SubRequest subRequest = new SubRequest(request, method, path, body);
+            subRequest.setAttribute(SUB_REQUEST, Boolean.TRUE);
+            SubResponse subResponse = new SubResponse(response);
+            dispatcherServlet.service(subRequest, subResponse);
+            return new BatchResult(subResponse.getStatus(), body(subResponse));
+        } catch (Exception e) {
+            LOGGER.warn("Batched {} {} failed: {}", method, path, e.getMessage());
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "There was a problem, couldn't run the request");
+        }
+    }
+
+    private JsonNode body(SubResponse response) {
+        byte[] body = response.getBody();
+        if (body.length == 0)
+            return (response.getErrorMessage() == null) ? null : message(response.getErrorMessage());
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            return JsonNodeFactory.instance.textNode(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Calls skip the filters, StrictHttpFirewall among them, and the path is normalized later on by
+     * UrlPathHelper: /api//batch or /api/./batch would get past the prefix checks and still reach the
+     * batch. Paths are taken only when they are already normalized.
+     */
+    private static boolean isNormalized(String path) {
+        if (path == null)
+            return false;
+        int query = path.indexOf('?');
+        String _path = ((query < 0) ? path : path.substring(0, query)).toLowerCase(Locale.ROOT);
+        if (_path.contains("//") || _path.contains("/./") || _path.contains("/../") || _path.endsWith("/.")
+                || _path.endsWith("/..") || _path.indexOf(';') >= 0 || _path.indexOf('\\') >= 0)
+            return false;
+        for (String separator : ENCODED_SEPARATORS) {
+            if (_path.contains(separator))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isRead(BatchRequest call) {
+        return call.getMethod() == null || "GET".equalsIgnoreCase(call.getMethod()) || "HEAD".equalsIgnoreCase(call.getMethod());
+    }
+
+    private static BatchResult error(HttpStatus status, String message) {
+        return new BatchResult(status.value(), message(message));
+    }
+
+    private static ObjectNode message(String message) {
+        return JsonNodeFactory.instance.objectNode().put("message", message);
+    }
+
+    private static String client(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof String)
+            return "user:" + authentication.getPrincipal();
+        return "ip:" + request.getRemoteAddr();
+    }
+}
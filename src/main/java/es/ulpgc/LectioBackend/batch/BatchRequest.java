@@ -0,0 +1,40 @@
+package es.ulpgc.LectioBackend.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * One call of a batch, e.g. { "method": "GET", "path": "/api/users/32/list?fields=id" }.
+ */
+public class BatchRequest {
+
+    private String method = "GET";
+    private String path;
+    private JsonNode body;
+
+    public BatchRequest() {
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public JsonNode getBody() {
+        return body;
+    }
+
+    public void setBody(JsonNode body) {
+        this.body = body;
+    }
+}
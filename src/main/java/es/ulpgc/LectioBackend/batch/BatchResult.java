@@ -0,0 +1,25 @@
+package es.ulpgc.LectioBackend.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The response to one call of a batch: its status and its body, as JSON when it was JSON.
+ */
+public class BatchResult {
+
+    private final int status;
+    private final JsonNode body;
+
+    public BatchResult(int status, JsonNode body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public JsonNode getBody() {
+        return body;
+    }
+}
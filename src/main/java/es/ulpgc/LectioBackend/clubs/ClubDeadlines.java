@@ -0,0 +1,154 @@
+package es.ulpgc.LectioBackend.clubs;
+
+import es.ulpgc.LectioBackend.model.Club;
+import es.ulpgc.LectioBackend.repository.ClubRepository;
+import es.ulpgc.LectioBackend.sync.ChangeLog;
+import es.ulpgc.LectioBackend.util.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Fires the end of the reading period of the clubs when their read_time passes. Upcoming read_time
+ * values are kept in a timing wheel, loaded once at startup and updated as clubs change, so nothing
+ * polls the club table. Expired clubs are handled in batches: a period_ended event is published for
+ * each of them and, when lectio.clubs.clear-book-on-expiry is set, their book and read_time are cleared.
+ * Never lazy, periods have to end even when no request has needed the clubs yet.
+ */
+@Service
+@Lazy(false)
+public class ClubDeadlines {
+
+    private static final long TICK_MILLIS = 1000;
+    private static final int BATCH_SIZE = 500;
+    private static final long RETRY_DELAY_MILLIS = 60_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClubDeadlines.class);
+
+    @Autowired
+    private ClubRepository clubRepository;
+
+    @Autowired
+    private ClubDirectory clubDirectory;
+
+    @Autowired
+    private ClubEventBus clubEventBus;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${lectio.clubs.clear-book-on-expiry:false}")
+    private boolean clearBookOnExpiry;
+
+    private final TimingWheel wheel = new TimingWheel(System.currentTimeMillis(), TICK_MILLIS);
+    private final AtomicLong expired = new AtomicLong();
+
+    @PostConstruct
+    public void load() {
+        long now = System.currentTimeMillis();
+        long after = 0;
+        List<Object[]> chunk;
+        do {
+            chunk = clubRepository.findReadTimesAfter(after, BATCH_SIZE);
+            for (Object[] row : chunk) {
+                after = ((Number) row[0]).longValue();
+                long readTime = ((Date) row[1]).getTime();
+                // Without clearing, periods that ended while we were down would end again on every start
+                if (clearBookOnExpiry || readTime > now)
+                    schedule(after, readTime);
+            }
+        } while (chunk.size() == BATCH_SIZE);
+    }
+
+    /**
+     * Schedules or reschedules the end of the club's reading period, or cancels it when it has none.
+     */
+    public void update(Club club) {
+        Date readTime = club.getRead_time_date();
+        if (readTime == null || club.getBook_id() == null)
+            cancel(club.getId());
+        else
+            schedule(club.getId(), readTime.getTime());
+    }
+
+    public synchronized void cancel(long club_id) {
+        wheel.cancel(club_id);
+    }
+
+    @Scheduled(fixedRate = TICK_MILLIS)
+    public void tick() {
+        long[] ended;
+        synchronized (this) {
+            ended = wheel.advance(System.currentTimeMillis());
+        }
+        for (int from = 0; from < ended.length; from += BATCH_SIZE) {
+            List<Long> batch = new ArrayList<>(Math.min(BATCH_SIZE, ended.length - from));
+            for (int i = from; i < Math.min(ended.length, from + BATCH_SIZE); i++)
+                batch.add(ended[i]);
+            try {
+                endPeriods(batch);
+            } catch (Exception e) {
+                LOGGER.warn("Couldn't end the reading period of {} clubs, retrying later", batch.size(), e);
+                long retry = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                batch.forEach(club_id -> schedule(club_id, retry));
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("pending", wheel.size());
+        }
+        stats.put("expired", expired.get());
+        stats.put("clearBookOnExpiry", clearBookOnExpiry);
+        return stats;
+    }
+
+    private synchronized void schedule(long club_id, long readTime) {
+        wheel.schedule(club_id, readTime);
+    }
+
+    private void endPeriods(List<Long> club_ids) {
+        Date now = new Date();
+        List<Club> clubs = new ArrayList<>(clubRepository.findAllById(club_ids));
+        // Skip clubs given a new period since their deadline was taken from the wheel
+        clubs.removeIf(club -> club.getRead_time_date() == null || club.getRead_time_date().after(now));
+        if (clubs.isEmpty())
+            return;
+        if (clearBookOnExpiry) {
+            // The subscribers sync the cleared book, with the clubs in the same transaction
+            List<Long> ended = clubs.stream().map(Club::getId).collect(Collectors.toList());
+            transactionTemplate.executeWithoutResult(status -> {
+                clubRepository.clearReadingPeriod(ended, now);
+                ended.forEach(club_id -> changeLog.clubChanged(club_id, false));
+            });
+        }
+
+        for (Club club : clubs) {
+            clubEventBus.publish(ClubEvent.of(ClubEvent.PERIOD_ENDED, club, null));
+            if (clearBookOnExpiry) {
+                club.clearReadingPeriod();
+                clubDirectory.addClub(club);
+            }
+        }
+        expired.addAndGet(clubs.size());
+    }
+}
@@ -0,0 +1,238 @@
+package es.ulpgc.LectioBackend.clubs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.ulpgc.LectioBackend.model.Club;
+import es.ulpgc.LectioBackend.repository.ClubRepository;
+import es.ulpgc.LectioBackend.search.TextNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Club discovery over an in-memory index: a bitmap of club ids per name/description token, one per
+ * current book and each club's read_time. Pages are keyset paginated by club id, and clubs are read
+ * from the database and written to the response in chunks, so no request holds every club at once.
+ */
+@Service
+public class ClubDirectory {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final int CHUNK_SIZE = 200;
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    @Autowired
+    private ClubRepository clubRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final BitSet clubs = new BitSet();
+    private final NavigableMap<String, BitSet> clubsByToken = new TreeMap<>();
+    private final Map<Long, BitSet> clubsByBook = new HashMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    @PostConstruct
+    public void load() {
+        long after = 0;
+        List<Club> chunk;
+        do {
+            chunk = clubRepository.findAfter(after, CHUNK_SIZE);
+            for (Club club : chunk) {
+                addClub(club);
+                after = club.getId();
+            }
+        } while (chunk.size() == CHUNK_SIZE);
+    }
+
+    /**
+     * Adds the club or replaces what was indexed for it.
+     */
+    public void addClub(Club club) {
+        lock.writeLock().lock();
+        try {
+            unindex(club.getId());
+            Entry entry = new Entry(tokens(club.getClub_name() + " " + club.getClub_description()), club.getBook_id(),
+                    (club.getRead_time_date() == null) ? 0 : club.getRead_time_date().getTime());
+            int id = (int) club.getId();
+            clubs.set(id);
+            for (String token : entry.tokens)
+                clubsByToken.computeIfAbsent(token, key -> new BitSet()).set(id);
+            if (entry.book_id != null)
+                clubsByBook.computeIfAbsent(entry.book_id, key -> new BitSet()).set(id);
+            entries.put(club.getId(), entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeClub(long club_id) {
+        lock.writeLock().lock();
+        try {
+            unindex(club_id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param query      every word must start a word of the club name or description, may be null
+     * @param book_id    current book of the club, may be null
+     * @param ends_after only clubs whose read_time is in [ends_after, ends_before], ignored when ends_before is null
+     * @param after      club id of the last club of the previous page, 0 for the first page
+     */
+    public ClubPage discover(String query, Long book_id, long ends_after, Long ends_before, long after, int limit) {
+        lock.readLock().lock();
+        try {
+            BitSet candidates = (BitSet) clubs.clone();
+            if (book_id != null)
+                candidates.and(clubsByBook.getOrDefault(book_id, new BitSet()));
+            for (String token : tokens(query)) {
+                BitSet matching = new BitSet();
+                for (BitSet ids : clubsByToken.subMap(token, true, token + Character.MAX_VALUE, false).values())
+                    matching.or(ids);
+                candidates.and(matching);
+            }
+
+            long[] page = new long[limit];
+            int size = 0;
+            Long next = null;
+            for (int id = candidates.nextSetBit((int) after + 1); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                if (ends_before != null) {
+                    long readTime = entries.get((long) id).read_time;
+                    if (readTime == 0 || readTime < ends_after || readTime > ends_before)
+                        continue;
+                }
+                if (size == limit) {
+                    next = page[size - 1];
+                    break;
+                }
+                page[size++] = id;
+            }
+            return new ClubPage(Arrays.copyOf(page, size), next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes { "next": Number or null, "clubs": [Club] } for the page.
+     */
+    public void writePage(ClubPage page, OutputStream out) throws IOException {
+        try (JsonGenerator generator = generator(out)) {
+            generator.writeStartObject();
+            if (page.getNext() == null)
+                generator.writeNullField("next");
+            else
+                generator.writeNumberField("next", page.getNext());
+            generator.writeArrayFieldStart("clubs");
+            long[] ids = page.getClub_ids();
+            for (int from = 0; from < ids.length; from += CHUNK_SIZE) {
+                List<Long> chunk = new ArrayList<>();
+                for (int i = from; i < Math.min(ids.length, from + CHUNK_SIZE); i++)
+                    chunk.add(ids[i]);
+                List<Club> found = new ArrayList<>(clubRepository.findAllById(chunk));
+                found.sort(Comparator.comparingLong(Club::getId));
+                writeChunk(generator, found);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes every club as a JSON array, reading them by id in chunks.
+     */
+    public void writeAll(OutputStream out) throws IOException {
+        try (JsonGenerator generator = generator(out)) {
+            generator.writeStartArray();
+            long after = 0;
+            List<Club> chunk;
+            do {
+                chunk = clubRepository.findAfter(after, CHUNK_SIZE);
+                writeChunk(generator, chunk);
+                if (!chunk.isEmpty())
+                    after = chunk.get(chunk.size() - 1).getId();
+            } while (chunk.size() == CHUNK_SIZE);
+            generator.writeEndArray();
+        }
+    }
+
+    private JsonGenerator generator(OutputStream out) throws IOException {
+        return objectMapper.getFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private void writeChunk(JsonGenerator generator, List<Club> chunk) throws IOException {
+        for (Club club : chunk)
+            generator.writeObject(club);
+        generator.flush();
+        // The request may keep an open persistence context, don't let it accumulate every club read
+        entityManager.clear();
+    }
+
+    private void unindex(long club_id) {
+        Entry entry = entries.remove(club_id);
+        if (entry == null)
+            return;
+        int id = (int) club_id;
+        clubs.clear(id);
+        for (String token : entry.tokens) {
+            BitSet ids = clubsByToken.get(token);
+            ids.clear(id);
+            if (ids.isEmpty())
+                clubsByToken.remove(token);
+        }
+        if (entry.book_id != null) {
+            BitSet ids = clubsByBook.get(entry.book_id);
+            ids.clear(id);
+            if (ids.isEmpty())
+                clubsByBook.remove(entry.book_id);
+        }
+    }
+
+    private static String[] tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(TextNormalizer.normalize(text))) {
+            if (!token.isEmpty())
+                tokens.add(token);
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    private static class Entry {
+        final String[] tokens;
+        final Long book_id;
+        final long read_time;
+
+        Entry(String[] tokens, Long book_id, long read_time) {
+            this.tokens = tokens;
+            this.book_id = book_id;
+            this.read_time = read_time;
+        }
+    }
+}
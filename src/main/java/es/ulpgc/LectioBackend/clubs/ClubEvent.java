@@ -0,0 +1,65 @@
+package es.ulpgc.LectioBackend.clubs;
+
+import es.ulpgc.LectioBackend.model.Club;
+
+public class ClubEvent {
+
+    public static final String BOOK_CHANGED = "book_changed";
+    public static final String SUBSCRIBED = "subscribed";
+    public static final String UNSUBSCRIBED = "unsubscribed";
+    public static final String DELETED = "deleted";
+    public static final String PERIOD_ENDED = "period_ended";
+
+    private final String type;
+    private final long club_id;
+    private final Long book_id;
+    private final String read_time;
+    private final long num_subscribers;
+    private final Long user_id;
+    private final long timestamp;
+
+    public ClubEvent(String type, long club_id, Long book_id, String read_time, long num_subscribers, Long user_id) {
+        this.type = type;
+        this.club_id = club_id;
+        this.book_id = book_id;
+        this.read_time = read_time;
+        this.num_subscribers = num_subscribers;
+        this.user_id = user_id;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public static ClubEvent of(String type, Club club, Long user_id) {
+        return new ClubEvent(type, club.getId(), club.getBook_id(), club.getRead_time(), club.getNum_subscribers(), user_id);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getClub_id() {
+        return club_id;
+    }
+
+    public Long getBook_id() {
+        return book_id;
+    }
+
+    public String getRead_time() {
+        return read_time;
+    }
+
+    public long getNum_subscribers() {
+        return num_subscribers;
+    }
+
+    /**
+     * @return user that subscribed or unsubscribed, null for other events
+     */
+    public Long getUser_id() {
+        return user_id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,259 @@
+package es.ulpgc.LectioBackend.clubs;
+
+import es.ulpgc.LectioBackend.model.ClubSubscribers;
+import es.ulpgc.LectioBackend.repository.ClubSubscribersRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process fan out of club changes to the Server-Sent Events connections of the club members.
+ * Publishing only queues the event, a single dispatcher thread finds the member connections and
+ * appends it to each connection's bounded buffer, and a small pool writes the buffers to the sockets.
+ * A connection whose buffer is full is evicted instead of slowing everyone else down; its client
+ * reconnects and reloads the clubs.
+ */
+@Service
+public class ClubEventBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClubEventBus.class);
+
+    private static final int DISPATCH_QUEUE_SIZE = 10_000;
+    private static final int CONNECTION_BUFFER_SIZE = 64;
+    private static final int SENDER_THREADS = 4;
+    private static final Outgoing HEARTBEAT = new Outgoing(0, null);
+
+    @Autowired
+    private ClubSubscribersRepository clubSubscribersRepository;
+
+    @Value("${lectio.events.timeout-ms:1800000}")
+    private long timeout;
+
+    private final Map<Long, Set<Connection>> connectionsByUser = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Connection>> connectionsByClub = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    private final ThreadPoolExecutor dispatcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(DISPATCH_QUEUE_SIZE), daemon("club-events-dispatcher"));
+    private final ExecutorService senders = Executors.newFixedThreadPool(SENDER_THREADS, daemon("club-events-sender"));
+
+    /**
+     * Opens an event stream with the changes of every club the user is subscribed to.
+     */
+    public SseEmitter connect(long user_id) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Connection connection = new Connection(user_id, emitter);
+        emitter.onCompletion(() -> disconnect(connection));
+        emitter.onTimeout(() -> disconnect(connection));
+        emitter.onError(error -> disconnect(connection));
+
+        connectionsByUser.computeIfAbsent(user_id, id -> ConcurrentHashMap.newKeySet()).add(connection);
+        for (ClubSubscribers subscription : clubSubscribersRepository.findClubsSubscribed(user_id))
+            join(connection, subscription.getClubSubscribersId().getClub_id());
+        return emitter;
+    }
+
+    /**
+     * Never blocks: when the dispatcher is too far behind the event is dropped.
+     */
+    public void publish(ClubEvent event) {
+        try {
+            dispatcher.execute(() -> dispatch(event));
+            published.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Keeps idle connections open through proxies and finds the ones that are gone.
+     */
+    @Scheduled(fixedDelayString = "${lectio.events.heartbeat-interval-ms:30000}")
+    public void heartbeat() {
+        for (Set<Connection> connections : connectionsByUser.values()) {
+            for (Connection connection : connections)
+                connection.offer(HEARTBEAT);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int connections = 0;
+        for (Set<Connection> userConnections : connectionsByUser.values())
+            connections += userConnections.size();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", connectionsByUser.size());
+        stats.put("connections", connections);
+        stats.put("clubs", connectionsByClub.size());
+        stats.put("published", published.get());
+        stats.put("dropped", dropped.get());
+        stats.put("evicted", evicted.get());
+        stats.put("pending", dispatcher.getQueue().size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        for (Set<Connection> connections : connectionsByUser.values())
+            connections.forEach(connection -> connection.emitter.complete());
+    }
+
+    private void dispatch(ClubEvent event) {
+        if (event.getUser_id() != null) {
+            Set<Connection> userConnections = connectionsByUser.get(event.getUser_id());
+            if (userConnections != null) {
+                for (Connection connection : userConnections) {
+                    if (event.getType().equals(ClubEvent.SUBSCRIBED))
+                        join(connection, event.getClub_id());
+                    else if (event.getType().equals(ClubEvent.UNSUBSCRIBED))
+                        leave(connection, event.getClub_id());
+                }
+                // The user that just left still learns about it
+                if (event.getType().equals(ClubEvent.UNSUBSCRIBED))
+                    userConnections.forEach(connection -> connection.offer(new Outgoing(sequence.incrementAndGet(), event)));
+            }
+        }
+
+        Set<Connection> members = connectionsByClub.get(event.getClub_id());
+        if (members != null) {
+            Outgoing message = new Outgoing(sequence.incrementAndGet(), event);
+            members.forEach(connection -> connection.offer(message));
+        }
+
+        if (event.getType().equals(ClubEvent.DELETED) && members != null)
+            members.forEach(connection -> leave(connection, event.getClub_id()));
+    }
+
+    /**
+     * Event builders are consumed when sent, so every connection builds its own.
+     */
+    private static SseEmitter.SseEventBuilder message(Outgoing outgoing) {
+        if (outgoing.event == null)
+            return SseEmitter.event().comment("heartbeat");
+        return SseEmitter.event()
+                .id(Long.toString(outgoing.id))
+                .name(outgoing.event.getType())
+                .data(outgoing.event, MediaType.APPLICATION_JSON);
+    }
+
+    private void join(Connection connection, long club_id) {
+        connectionsByClub.compute(club_id, (id, members) -> {
+            Set<Connection> _members = (members == null) ? ConcurrentHashMap.newKeySet() : members;
+            _members.add(connection);
+            return _members;
+        });
+        connection.clubs.add(club_id);
+    }
+
+    private void leave(Connection connection, long club_id) {
+        connection.clubs.remove(club_id);
+        connectionsByClub.computeIfPresent(club_id, (id, members) -> {
+            members.remove(connection);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private void disconnect(Connection connection) {
+        if (!connection.open.getAndSet(false))
+            return;
+        for (Long club_id : connection.clubs)
+            leave(connection, club_id);
+        connectionsByUser.computeIfPresent(connection.user_id, (id, connections) -> {
+            connections.remove(connection);
+            return connections.isEmpty() ? null : connections;
+        });
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private class Connection {
+        final long user_id;
+        final SseEmitter emitter;
+        final ArrayBlockingQueue<Outgoing> buffer = new ArrayBlockingQueue<>(CONNECTION_BUFFER_SIZE);
+        final Set<Long> clubs = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean open = new AtomicBoolean(true);
+        final AtomicBoolean draining = new AtomicBoolean();
+
+        Connection(long user_id, SseEmitter emitter) {
+            this.user_id = user_id;
+            this.emitter = emitter;
+        }
+
+        void offer(Outgoing message) {
+            if (!open.get())
+                return;
+            if (!buffer.offer(message)) {
+                evicted.incrementAndGet();
+                disconnect(this);
+                emitter.complete();
+                return;
+            }
+            if (draining.compareAndSet(false, true))
+                senders.execute(this::drain);
+        }
+
+        /**
+         * Runs on one sender thread at a time per connection, so events keep their order.
+         */
+        void drain() {
+            try {
+                Outgoing message;
+                while (open.get() && (message = buffer.poll()) != null)
+                    emitter.send(message(message));
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.debug("Closing club events connection of user {}", user_id, e);
+                disconnect(this);
+                emitter.completeWithError(e);
+            } finally {
+                draining.set(false);
+            }
+            if (open.get() && !buffer.isEmpty() && draining.compareAndSet(false, true))
+                senders.execute(this::drain);
+        }
+    }
+
+    private static class Outgoing {
+        final long id;
+        final ClubEvent event;
+
+        Outgoing(long id, ClubEvent event) {
+            this.id = id;
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package es.ulpgc.LectioBackend.clubs;
+
+public class ClubPage {
+
+    private final long[] club_ids;
+    private final Long next;
+
+    public ClubPage(long[] club_ids, Long next) {
+        this.club_ids = club_ids;
+        this.next = next;
+    }
+
+    public long[] getClub_ids() {
+        return club_ids;
+    }
+
+    /**
+     * @return value for the after parameter of the next page, null on the last page
+     */
+    public Long getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,229 @@
+package es.ulpgc.LectioBackend.clubs;
+
+import es.ulpgc.LectioBackend.model.Club;
+import es.ulpgc.LectioBackend.repository.ClubPunctuationRepository;
+import es.ulpgc.LectioBackend.repository.ClubRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Rating aggregates (sum, count and distribution of the 1 to 5 punctuations) and subscriber counts of
+ * every club, kept in memory and updated with each punctuation or subscription. Clubs are kept in two
+ * ordered indexes, by rating and by subscribers, so a ranked page is read without touching the database.
+ * <p>
+ * Rating order uses a bayesian average that pulls clubs with few punctuations towards PRIOR_MEAN, so
+ * a single 5 does not rank above a hundred 4s.
+ */
+@Service
+public class ClubRanking {
+
+    public static final String BY_RATING = "rating";
+    public static final String BY_SUBSCRIBERS = "subscribers";
+
+    private static final double PRIOR_MEAN = 3.0;
+    private static final double PRIOR_WEIGHT = 5.0;
+
+    @Autowired
+    private ClubRepository clubRepository;
+
+    @Autowired
+    private ClubPunctuationRepository clubPunctuationRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Aggregate> aggregates = new HashMap<>();
+    private final TreeSet<Aggregate> byRating = new TreeSet<>(Comparator.comparingDouble((Aggregate a) -> -a.score)
+            .thenComparingLong(a -> -a.count)
+            .thenComparingLong(a -> a.club_id));
+    private final TreeSet<Aggregate> bySubscribers = new TreeSet<>(Comparator.comparingLong((Aggregate a) -> -a.subscribers)
+            .thenComparingDouble(a -> -a.score)
+            .thenComparingLong(a -> a.club_id));
+
+    @PostConstruct
+    public void load() {
+        Map<Long, long[]> distributions = new HashMap<>();
+        for (Object[] row : clubPunctuationRepository.countPunctuationsPerClub()) {
+            long club_id = ((Number) row[0]).longValue();
+            int punctuation = ((Number) row[1]).intValue();
+            if (punctuation >= 1 && punctuation <= 5)
+                distributions.computeIfAbsent(club_id, id -> new long[5])[punctuation - 1] = ((Number) row[2]).longValue();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Club club : clubRepository.findAll())
+                index(new Aggregate(club.getId(), distributions.getOrDefault(club.getId(), new long[5]), club.getNum_subscribers()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addClub(long club_id) {
+        lock.writeLock().lock();
+        try {
+            if (!aggregates.containsKey(club_id))
+                index(new Aggregate(club_id, new long[5], 0));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeClub(long club_id) {
+        lock.writeLock().lock();
+        try {
+            Aggregate aggregate = aggregates.remove(club_id);
+            if (aggregate != null) {
+                byRating.remove(aggregate);
+                bySubscribers.remove(aggregate);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addPunctuation(long club_id, long punctuation) {
+        if (punctuation < 1 || punctuation > 5)
+            return;
+        lock.writeLock().lock();
+        try {
+            Aggregate previous = current(club_id);
+            long[] distribution = previous.distribution.clone();
+            distribution[(int) punctuation - 1]++;
+            replace(previous, new Aggregate(club_id, distribution, previous.subscribers));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A punctuation was deleted. Unlike the other changes it doesn't bring back a club already removed.
+     */
+    public void removePunctuation(long club_id, long punctuation) {
+        if (punctuation < 1 || punctuation > 5)
+            return;
+        lock.writeLock().lock();
+        try {
+            Aggregate previous = aggregates.get(club_id);
+            if (previous == null || previous.distribution[(int) punctuation - 1] == 0)
+                return;
+            long[] distribution = previous.distribution.clone();
+            distribution[(int) punctuation - 1]--;
+            replace(previous, new Aggregate(club_id, distribution, previous.subscribers));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void setSubscribers(long club_id, long subscribers) {
+        lock.writeLock().lock();
+        try {
+            Aggregate previous = current(club_id);
+            replace(previous, new Aggregate(club_id, previous.distribution, subscribers));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param sort BY_RATING or BY_SUBSCRIBERS
+     * @return the clubs in positions [offset, offset + limit) of the ranking
+     */
+    public List<ClubRating> ranking(String sort, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            TreeSet<Aggregate> index = BY_SUBSCRIBERS.equals(sort) ? bySubscribers : byRating;
+            List<ClubRating> page = new ArrayList<>(Math.max(0, Math.min(limit, index.size() - offset)));
+            Iterator<Aggregate> iterator = index.iterator();
+            for (int i = 0; iterator.hasNext() && page.size() < limit; i++) {
+                Aggregate aggregate = iterator.next();
+                if (i >= offset)
+                    page.add(aggregate.toRating());
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ClubRating rating(long club_id) {
+        lock.readLock().lock();
+        try {
+            Aggregate aggregate = aggregates.get(club_id);
+            return (aggregate == null) ? null : aggregate.toRating();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return aggregates.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Aggregate current(long club_id) {
+        Aggregate aggregate = aggregates.get(club_id);
+        if (aggregate == null) {
+            aggregate = new Aggregate(club_id, new long[5], 0);
+            index(aggregate);
+        }
+        return aggregate;
+    }
+
+    private void replace(Aggregate previous, Aggregate next) {
+        byRating.remove(previous);
+        bySubscribers.remove(previous);
+        index(next);
+    }
+
+    private void index(Aggregate aggregate) {
+        aggregates.put(aggregate.club_id, aggregate);
+        byRating.add(aggregate);
+        bySubscribers.add(aggregate);
+    }
+
+    /**
+     * Immutable, so it can be looked up in the ordered sets by the values it was inserted with.
+     */
+    private static class Aggregate {
+        final long club_id;
+        final long[] distribution;
+        final long sum;
+        final long count;
+        final double score;
+        final long subscribers;
+
+        Aggregate(long club_id, long[] distribution, long subscribers) {
+            this.club_id = club_id;
+            this.distribution = distribution;
+            this.subscribers = subscribers;
+            long _sum = 0;
+            long _count = 0;
+            for (int i = 0; i < distribution.length; i++) {
+                _sum += (i + 1) * distribution[i];
+                _count += distribution[i];
+            }
+            this.sum = _sum;
+            this.count = _count;
+            this.score = (PRIOR_MEAN * PRIOR_WEIGHT + _sum) / (PRIOR_WEIGHT + _count);
+        }
+
+        ClubRating toRating() {
+            double average = (count == 0) ? 0 : (double) sum / count;
+            return new ClubRating(club_id, average, score, count, distribution.clone(), subscribers);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package es.ulpgc.LectioBackend.clubs;
+
+public class ClubRating {
+
+    private final long club_id;
+    private final double average;
+    private final double score;
+    private final long count;
+    private final long[] distribution;
+    private final long subscribers;
+
+    public ClubRating(long club_id, double average, double score, long count, long[] distribution, long subscribers) {
+        this.club_id = club_id;
+        this.average = average;
+        this.score = score;
+        this.count = count;
+        this.distribution = distribution;
+        this.subscribers = subscribers;
+    }
+
+    public long getClub_id() {
+        return club_id;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of 1 to 5 punctuations, index 0 holds the ones
+     */
+    public long[] getDistribution() {
+        return distribution;
+    }
+
+    public long getSubscribers() {
+        return subscribers;
+    }
+}
@@ -0,0 +1,65 @@
+package es.ulpgc.LectioBackend.coalescing;
+
+import es.ulpgc.LectioBackend.monitoring.CacheAccessEvent;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces identical concurrent reads per named group, so a burst of clients asking for the same
+ * book, reviews page or search shares one database round trip and one serialized response.
+ * Keys must identify the normalized request completely.
+ */
+@Service
+public class RequestCoalescer {
+
+    private final Map<String, SingleFlight<String, Object>> flights = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <V> V execute(String group, String key, SingleFlight.Loader<V> loader) throws Exception {
+        SingleFlight<String, Object> flight = flights.computeIfAbsent(group, name -> new SingleFlight<>());
+        boolean[] loaded = new boolean[1];
+        V value = (V) flight.execute(key, () -> {
+            loaded[0] = true;
+            return loader.load();
+        });
+        CacheAccessEvent.record("coalescing:" + group, key, !loaded[0]);
+        return value;
+    }
+
+    /**
+     * Joins the parts of a request into its key, each after its length so no two different lists of
+     * parts give the same key whatever they contain. Null parts are told apart from empty ones.
+     */
+    public static String key(String... parts) {
+        StringBuilder key = new StringBuilder();
+        for (String part : parts) {
+            if (part == null)
+                key.append('-');
+            else
+                key.append(part.length()).append(':').append(part);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return per group requests, shared results and coalescing ratio (shared / requests)
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        flights.forEach((group, flight) -> {
+            long requests = flight.getRequests();
+            long shared = flight.getShared();
+            Map<String, Object> groupStats = new LinkedHashMap<>();
+            groupStats.put("requests", requests);
+            groupStats.put("databaseCalls", requests - shared);
+            groupStats.put("shared", shared);
+            groupStats.put("coalescingRatio", (requests == 0) ? 0 : (double) shared / requests);
+            groupStats.put("inFlight", flight.getInFlight());
+            stats.put(group, groupStats);
+        });
+        return stats;
+    }
+}
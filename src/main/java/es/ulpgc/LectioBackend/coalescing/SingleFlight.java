@@ -0,0 +1,73 @@
+package es.ulpgc.LectioBackend.coalescing;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs at most one load per key at a time: callers arriving while a load for the same key is in
+ * flight wait for it and get its result, or its exception, instead of running their own.
+ * Nothing is kept once the load finishes, so this never serves stale data.
+ */
+public class SingleFlight<K, V> {
+
+    public interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    private final Map<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    public V execute(K key, Loader<V> loader) throws Exception {
+        requests.increment();
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = calls.putIfAbsent(key, call);
+        if (inFlight != null) {
+            shared.increment();
+            return await(inFlight);
+        }
+
+        try {
+            V value = loader.load();
+            call.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    /**
+     * @return calls made
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return calls that got the result of another call's load
+     */
+    public long getShared() {
+        return shared.sum();
+    }
+
+    public int getInFlight() {
+        return calls.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> call) throws Exception {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw (Error) cause;
+        }
+    }
+}
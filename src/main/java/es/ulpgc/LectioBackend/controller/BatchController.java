@@ -0,0 +1,86 @@
+package es.ulpgc.LectioBackend.controller;
+
+import es.ulpgc.LectioBackend.batch.BatchDispatcher;
+import es.ulpgc.LectioBackend.batch.BatchRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+
+@CrossOrigin
+@RestController
+@RequestMapping("/api")
+public class BatchController {
+
+    @Autowired
+    private BatchDispatcher batchDispatcher;
+
+
+    /**
+     * body: [
+     *      {
+     *          "method": GET, POST, PUT, PATCH, DELETE (optional, GET by default),
+     *          "path": String starting with /api/, query string included,
+     *          "body": JSON (optional)
+     *      }
+     * ]
+     *
+     * #### Example ####
+     * body: [
+     *      { "path": "/api/users/32" },
+     *      { "path": "/api/users/32/list" },
+     *      { "path": "/api/clubs/32" },
+     *      { "method": "POST", "path": "/api/books/progress?book_id=4&list_id=9&progress=120" }
+     * ]
+     *
+     * URL: [POST] /api/batch
+     *
+     * Note: consecutive GET requests run in parallel, any other request runs alone and in order.
+     * Streamed responses (/api/clubs, events) can't be batched. lectio.batch.max-requests (default 20) at once
+     *
+     * @return List of { "status": Number, "body": JSON }, one per request and in the same order
+     */
+    @RequestMapping(path = "/batch", method = {RequestMethod.POST})
+    public ResponseEntity batch(@RequestBody List<BatchRequest> requests, HttpServletRequest request, HttpServletResponse response) {
+        try {
+            if (request.getAttribute(BatchDispatcher.SUB_REQUEST) != null)
+                return buildResponse(HttpStatus.BAD_REQUEST, "{ \"message\": \"A batch can't be batched\" }");
+            if (requests.isEmpty() || requests.size() > batchDispatcher.getMaxRequests())
+                return buildResponse(HttpStatus.BAD_REQUEST,
+                        "{ \"message\": \"A batch needs between 1 and " + batchDispatcher.getMaxRequests() + " requests\" }");
+            return buildResponse(HttpStatus.OK, batchDispatcher.execute(request, response, requests));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't run the batch\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/batch/stats
+     *
+     * @return { "batches", "calls", "parallelCalls", "timeouts", "activeThreads", "queued" }
+     */
+    @RequestMapping(path = "/batch/stats", method = {RequestMethod.GET})
+    public ResponseEntity getBatchStats() {
+        return buildResponse(HttpStatus.OK, batchDispatcher.stats());
+    }
+
+
+    private <T> ResponseEntity<T> buildResponse(HttpStatus _status, T _body) {
+        return ResponseEntity.status(_status)
+                .headers(setHeaders())
+                .body(_body);
+    }
+
+
+    private HttpHeaders setHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
+        return headers;
+    }
+}
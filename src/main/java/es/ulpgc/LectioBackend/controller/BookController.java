@@ -1,8 +1,19 @@
 package es.ulpgc.LectioBackend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.Gson;
+import es.ulpgc.LectioBackend.coalescing.RequestCoalescer;
 import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.monitoring.JsonProfiler;
+import es.ulpgc.LectioBackend.projection.FieldSet;
 import es.ulpgc.LectioBackend.repository.BookRepository;
+import es.ulpgc.LectioBackend.repository.MultiGet;
+import es.ulpgc.LectioBackend.search.BookCatalog;
+import es.ulpgc.LectioBackend.search.BookSearch;
+import es.ulpgc.LectioBackend.search.FuzzyIndex;
+import es.ulpgc.LectioBackend.search.FuzzyMatch;
+import es.ulpgc.LectioBackend.search.GenreIndex;
+import es.ulpgc.LectioBackend.search.SuggestIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -10,7 +21,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 
 @CrossOrigin
 @RestController
@@ -20,6 +35,30 @@ public class BookController {
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private GenreIndex genreIndex;
+
+    @Autowired
+    private BookCatalog bookCatalog;
+
+    @Autowired
+    private BookSearch bookSearch;
+
+    @Autowired
+    private SuggestIndex suggestIndex;
+
+    @Autowired
+    private FuzzyIndex fuzzyIndex;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MultiGet multiGet;
+
 
     /**
      * body: {
@@ -56,21 +95,29 @@ public class BookController {
 
 
     /**
-     * URL: [GET] /api/books?limit={num_limit}&offset={page}
-     * Example: /api/books?limit=3&offset=0
+     * URL: [GET] /api/books?limit={num_limit}&offset={page}&fields={field,field}
+     * Example: /api/books?limit=3&offset=0&fields=id,title,author
+     *
+     * Note: fields is optional, only the listed fields of each book are read and sent.
+     * Any of id, title, author, publisher, pages, isbn, genres and synopsis
      *
      * @return List
      */
     @RequestMapping(path = "/books", method = {RequestMethod.GET})
-    public ResponseEntity getAllBooks(@RequestParam(required = false) String offset, @RequestParam(required = false, defaultValue = "0") String limit) {
+    public ResponseEntity getAllBooks(@RequestParam(required = false) String offset, @RequestParam(required = false, defaultValue = "0") String limit,
+                                      @RequestParam(value = "fields", required = false) String fields) {
+        FieldSet _fields = FieldSet.parse(fields, BookRepository.FIELDS);
         try {
-            List<Book> books;
+            List<?> books;
             if (offset == null || limit.equals("0")) {
-                books = new ArrayList<>(bookRepository.findAll());
+                books = (_fields == null) ? new ArrayList<>(bookRepository.findAll())
+                        : bookRepository.findFields(_fields, Integer.MAX_VALUE, 0);
                 offset = "0";
             } else {
-                books = new ArrayList<>(
-                        bookRepository.findAll(Integer.valueOf(offset) * Integer.valueOf(limit), Integer.valueOf(limit)));
+                int _limit = Integer.valueOf(limit);
+                int _offset = Integer.valueOf(offset) * _limit;
+                books = (_fields == null) ? new ArrayList<>(bookRepository.findAll(_offset, _limit))
+                        : bookRepository.findFields(_fields, _limit, _offset);
             }
 
             return (books.isEmpty()) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildPaginatedResponse(HttpStatus.OK,
@@ -81,6 +128,25 @@ public class BookController {
     }
 
 
+    /**
+     * URL: [GET] /api/books?ids={id,id}
+     * Example: /api/books?ids=4,8,15
+     *
+     * Note: books keyed by id, null for the ids that don't exist
+     *
+     * @return Map
+     */
+    @RequestMapping(path = "/books", method = {RequestMethod.GET}, params = "ids")
+    public ResponseEntity getBooksByIds(@RequestParam(value = "ids") String ids) {
+        List<Long> _ids = multiGet.parseIds(ids);
+        try {
+            return buildResponse(HttpStatus.OK, multiGet.findAll(Book.class, _ids));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get books\" }");
+        }
+    }
+
+
     /**
      * URL: [GET] /api/books/{bookId}
      *
@@ -89,7 +155,7 @@ public class BookController {
     @RequestMapping(path = "/books/{bookId}", method = {RequestMethod.GET})
     public ResponseEntity getBookById(@PathVariable(value = "bookId") long id) {
         try {
-            return getIdResponse(id);
+            return requestCoalescer.execute("book", Long.toString(id), () -> getIdResponse(id));
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"Couldn't find book with id " + id + "\" }");
         }
@@ -100,6 +166,11 @@ public class BookController {
      * Example URL: [GET] /api/books/search?limit={num_limit}&offset={page}&title={title}&author={author}&genre={genre}&publisher={publisher}
      *
      * Note: params are optional but you must add at least one
+     * Note: genre accepts a comma separated list, genre_match={all|any} (default all) tells how to combine them
+     * Note: facets=true adds per genre, publisher and author counts of all the hits, facet_limit={num} (default 10) per facet
+     * Note: with lectio.search.backend=fulltext title, author and publisher match whole words or their beginnings,
+     * most relevant books first
+     * Note: fields={field,field} sends only those fields of each book, as in /api/books
      *
      * @return List
      */
@@ -107,58 +178,187 @@ public class BookController {
     public ResponseEntity searchBookByName(@RequestParam(value = "title", required = false, defaultValue = "") String title,
                                            @RequestParam(value = "author", required = false, defaultValue = "") String author,
                                            @RequestParam(value = "genre", required = false, defaultValue = "") String genre,
+                                           @RequestParam(value = "genre_match", required = false, defaultValue = "all") String genre_match,
                                            @RequestParam(value = "publisher", required = false, defaultValue = "") String publisher,
                                            @RequestParam(value = "offset", required = true) String offset,
-                                           @RequestParam(value = "limit", required = true) String limit) {
+                                           @RequestParam(value = "limit", required = true) String limit,
+                                           @RequestParam(value = "facets", required = false, defaultValue = "false") boolean facets,
+                                           @RequestParam(value = "facet_limit", required = false, defaultValue = "10") int facet_limit,
+                                           @RequestParam(value = "fields", required = false) String fields) {
+        FieldSet _fields = FieldSet.parse(fields, BookRepository.FIELDS);
+        try {
+            // Searched with the same normalized params the key is made of, so requests sharing a key get the same result
+            String _title = normalize(title);
+            String _author = normalize(author);
+            String _genre = String.join(",", GenreIndex.parseGenres(genre));
+            String _genre_match = normalize(genre_match);
+            String _publisher = normalize(publisher);
+            String _offset = offset.trim();
+            String _limit = limit.trim();
+            int _facet_limit = facets ? facet_limit : 0;
+            String key = RequestCoalescer.key(_title, _author, _genre, _genre_match, _publisher, _offset, _limit,
+                    Boolean.toString(facets), Integer.toString(_facet_limit), (_fields == null) ? null : _fields.key());
+            return requestCoalescer.execute("search", key, () -> search(_title, _author, _genre, _genre_match, _publisher,
+                    _offset, _limit, facets, _facet_limit, _fields));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"Couldn't find book, there was a conflict\" }");
+        }
+    }
+
+
+    private ResponseEntity search(String title, String author, String genre, String genre_match, String publisher,
+                                  String offset, String limit, boolean facets, int facet_limit, FieldSet fields) {
         try {
-            List<Book> books;
-            if (author.equals("") && genre.equals("") && publisher.equals("")) {
+            List<?> books;
+            int num_books;
+            List<String> genres = GenreIndex.parseGenres(genre);
+            int _limit = Integer.valueOf(limit);
+            int _offset = Integer.valueOf(offset) * _limit;
+            boolean matchAll = !genre_match.equalsIgnoreCase("any");
+            BitSet genreMatches = genres.isEmpty() ? null
+                    : (matchAll ? genreIndex.booksWithAll(genres) : genreIndex.booksWithAny(genres));
+
+            if (author.equals("") && genres.isEmpty() && publisher.equals("")) {
                 if (title.equals(""))
                     return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"You must specify book title at least\" }");
-                else {
-                    books = searchByName(title, (Integer.valueOf(limit)), (Integer.valueOf(offset) * Integer.valueOf(limit)));
-                    if (books == null ){
-                        return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There are a problem with title\" }");
+                books = find(fields, title, author, publisher, null, 0, _limit, _offset);
+                num_books = bookSearch.count(title, author, publisher, null, 0);
+            } else if (genres.isEmpty()) {
+                books = find(fields, title, author, publisher, null, 0, _limit, _offset);
+                num_books = bookSearch.count(title, author, publisher, null, 0);
+            } else {
+                if (title.equals("") && author.equals("") && publisher.equals("")) {
+                    List<Long> ids = GenreIndex.page(genreMatches, _offset, _limit);
+                    books = (fields == null) ? findBooksById(ids) : bookRepository.findFieldsById(fields, ids);
+                    num_books = genreMatches.cardinality();
+                } else {
+                    List<Long> genreIds = genreIndex.genreIds(genres);
+                    if (genreIds.isEmpty() || (matchAll && genreIds.size() < genres.size())) {
+                        books = new ArrayList<>();
+                        num_books = 0;
+                    } else {
+                        int required = matchAll ? genreIds.size() : 1;
+                        books = find(fields, title, author, publisher, genreIds, required, _limit, _offset);
+                        num_books = bookSearch.count(title, author, publisher, genreIds, required);
                     }
                 }
-            }else
-            books = bookRepository.findByFilter(title, author, genre, publisher,
-                                                            (Integer.valueOf(limit)),
-                                                            (Integer.valueOf(offset) * Integer.valueOf(limit)));
-
-            int num_books= bookRepository.countBooksSearched(title, author, genre, publisher);
+            }
 
             if (books.size() == 0)
                 return buildResponse(HttpStatus.NO_CONTENT, "{ \"message\": \"Couldn't find book with specified filters\" }");
 
+            String facetsJson = null;
+            if (facets) {
+                BitSet hits = bookCatalog.match(title, author, publisher, genreMatches);
+                facetsJson = JsonProfiler.toJson(new Gson(), bookCatalog.facets(hits, facet_limit), "facets");
+            }
+
             return buildPaginatedResponse(HttpStatus.OK,
-                    convertToJsonSearched(Integer.valueOf(offset), Integer.valueOf(limit), books, num_books));
+                    convertToJsonSearched(Integer.valueOf(offset), _limit, books, num_books, facetsJson));
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"Couldn't find book, there was a conflict\" }");
         }
     }
 
 
-    private List<Book> searchByName(String title, int limit, int offset) {
-        List<Book> books = bookRepository.findByName(title, limit, offset);
+    /**
+     * URL: [GET] /api/books/search/fuzzy?q={text}&limit={num_limit}&max_edits={num_edits}
+     * Example: /api/books/search/fuzzy?q=Rimas y leyndas
+     *
+     * Note: tolerates typos and missing accents in titles and authors, closest matches first.
+     * max_edits is optional, by default it grows with the length of q
+     *
+     * @return List
+     */
+    @RequestMapping(path = "/books/search/fuzzy", method = {RequestMethod.GET})
+    public ResponseEntity fuzzySearchBooks(@RequestParam(value = "q") String q,
+                                           @RequestParam(value = "limit", required = false, defaultValue = "10") int limit,
+                                           @RequestParam(value = "max_edits", required = false, defaultValue = "-1") int max_edits) {
+        try {
+            List<FuzzyMatch> matches = fuzzyIndex.search(q, max_edits, limit);
+            return (matches.isEmpty()) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildResponse(HttpStatus.OK, matches);
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"Couldn't find book, there was a conflict\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/books/search/fuzzy/stats
+     *
+     * @return size of the fuzzy search index
+     */
+    @RequestMapping(path = "/books/search/fuzzy/stats", method = {RequestMethod.GET})
+    public ResponseEntity getFuzzyStats() {
+        return buildResponse(HttpStatus.OK, fuzzyIndex.stats());
+    }
+
+
+    /**
+     * URL: [GET] /api/books/suggest?q={prefix}&limit={num_limit}
+     * Example: /api/books/suggest?q=rim&limit=5
+     *
+     * Note: completes titles and authors, most listed books first, limit is 10 at most
+     *
+     * @return List
+     */
+    @RequestMapping(path = "/books/suggest", method = {RequestMethod.GET})
+    public ResponseEntity suggestBooks(@RequestParam(value = "q") String q,
+                                       @RequestParam(value = "limit", required = false, defaultValue = "10") int limit) {
+        try {
+            return buildResponse(HttpStatus.OK, suggestIndex.suggest(q, limit));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"Couldn't get suggestions, there was a conflict\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/books/suggest/stats
+     *
+     * @return size of the suggestion index
+     */
+    @RequestMapping(path = "/books/suggest/stats", method = {RequestMethod.GET})
+    public ResponseEntity getSuggestStats() {
+        return buildResponse(HttpStatus.OK, suggestIndex.stats());
+    }
+
+
+    private List<?> find(FieldSet fields, String title, String author, String publisher, Collection<Long> genreIds,
+                         int required, int limit, int offset) {
+        if (fields == null)
+            return bookSearch.find(title, author, publisher, genreIds, required, limit, offset);
+        return bookSearch.find(fields, title, author, publisher, genreIds, required, limit, offset);
+    }
+
+
+    private List<Book> findBooksById(List<Long> ids) {
+        List<Book> books = new ArrayList<>(bookRepository.findAllById(ids));
+        books.sort(Comparator.comparingLong(Book::getId));
         return books;
     }
 
 
-    private String convertToJson(int offset, int limit, List<Book> books) {
+    private String convertToJson(int offset, int limit, List<?> books) {
         Gson gson = new Gson();
-        return "{\"numBooks\": " + bookRepository.count() + ", \"page\": " + offset + ", \"size\": " + limit + ", \"books\": " + gson.toJson(books) + "}";
+        return "{\"numBooks\": " + bookRepository.count() + ", \"page\": " + offset + ", \"size\": " + limit + ", \"books\": " + JsonProfiler.toJson(gson, books, "books") + "}";
     }
 
-    private String convertToJsonSearched(int offset, int limit, List<Book> books, int num_books) {
+    private String convertToJsonSearched(int offset, int limit, List<?> books, int num_books, String facets) {
         Gson gson = new Gson();
-        return "{\"numBooks\": " + num_books + ", \"page\": " + offset + ", \"size\": " + limit + ", \"books\": " + gson.toJson(books) + "}";
+        return "{\"numBooks\": " + num_books + ", \"page\": " + offset + ", \"size\": " + limit + ", \"books\": " + JsonProfiler.toJson(gson, books, "books")
+                + ((facets == null) ? "" : ", \"facets\": " + facets) + "}";
     }
 
     private Book store(@RequestBody Book book) {
-        return bookRepository
+        Book _book = bookRepository
                 .save(new Book(book.getTitle(), book.getAuthor(), book.getPublisher(), book.getPages(), book.getIsbn(),
                         book.getGenres(), book.getSynopsis()));
+        genreIndex.indexBook(_book);
+        bookCatalog.addBook(_book);
+        suggestIndex.addBook(_book);
+        fuzzyIndex.addBook(_book);
+        return _book;
     }
 
     private HttpHeaders setHeaders() {
@@ -182,10 +382,16 @@ public class BookController {
     }
 
 
-    private ResponseEntity getIdResponse(@PathVariable("userId") long _id) {
-        Book _book = bookRepository.findById(_id).get();
+    private ResponseEntity getIdResponse(@PathVariable("userId") long _id) throws Exception {
+        Book _book = bookRepository.findById(_id).orElse(null);
         if (_book == null)
-            return buildResponse(HttpStatus.NO_CONTENT, _book);
-        return buildResponse(HttpStatus.OK, _book);
+            return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"Couldn't find book with id " + _id + "\" }");
+        // Serialized here so coalesced requests share the JSON too
+        return buildResponse(HttpStatus.OK, objectMapper.writeValueAsString(_book));
+    }
+
+
+    private static String normalize(String param) {
+        return param.trim().toLowerCase(Locale.ROOT);
     }
 }
@@ -3,18 +3,30 @@ package es.ulpgc.LectioBackend.controller;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.Gson;
+import es.ulpgc.LectioBackend.library.LibraryIndex;
 import es.ulpgc.LectioBackend.model.*;
+import es.ulpgc.LectioBackend.monitoring.JsonProfiler;
+import es.ulpgc.LectioBackend.projection.FieldSet;
+import es.ulpgc.LectioBackend.recommendation.RecommendationEngine;
+import es.ulpgc.LectioBackend.recommendation.TrendingEngine;
 import es.ulpgc.LectioBackend.repository.BookListRepository;
 import es.ulpgc.LectioBackend.repository.BookRepository;
+import es.ulpgc.LectioBackend.repository.MultiGet;
 import es.ulpgc.LectioBackend.repository.UserListRepository;
+import es.ulpgc.LectioBackend.search.SuggestIndex;
+import es.ulpgc.LectioBackend.sync.ChangeLog;
+import es.ulpgc.LectioBackend.util.Numbers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @CrossOrigin
 @RestController
@@ -30,28 +42,61 @@ public class BookListController {
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private SuggestIndex suggestIndex;
+
+    @Autowired
+    private RecommendationEngine recommendationEngine;
+
+    @Autowired
+    private TrendingEngine trendingEngine;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private LibraryIndex libraryIndex;
+
+    @Autowired
+    private MultiGet multiGet;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
 
     /**
      * URL: [GET] /api/users/{user_id}/list/{list_name_or_list_id}
      * <p>
      * Example 1: /api/users/32/list/9
      * Example 2: /api/users/32/list/Anime
+     * Example 3: /api/users/32/list/Anime?fields=id,title,author
+     *
+     * Note: fields is optional, only the listed fields of each book are read and sent, as in /api/books
      *
      * @return List
      */
     @RequestMapping(path = "/users/{id}/list/{list_name}", method = {RequestMethod.GET})
-    public ResponseEntity getBookList(@PathVariable(value = "id") long id, @PathVariable(value = "list_name") String list_name) {
+    public ResponseEntity getBookList(@PathVariable(value = "id") long id, @PathVariable(value = "list_name") String list_name,
+                                      @RequestParam(value = "fields", required = false) String fields) {
+        FieldSet _fields = FieldSet.parse(fields, BookRepository.FIELDS);
         try {
             List<Book> books = new ArrayList<>();
             UserList userList = isNumeric(list_name) ? getIDResponse(list_name) : getNameResponse(id, list_name);
 
             if (userList == null)
-                return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get list\" }");
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There was a problem, this list doesn't exists\" }");
 
             List<BookList> bookLists = bookListRepository.getBookListByListId(userList.getList_id());
 
+            if (_fields != null) {
+                List<Long> ids = new ArrayList<>(bookLists.size());
+                bookLists.forEach(bookList -> ids.add(bookList.getBookListId().getBook_id()));
+                List<?> rows = bookRepository.findFieldsById(_fields, ids);
+                return (rows.isEmpty()) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildResponse(HttpStatus.OK, convertToJson(userList, rows));
+            }
+
             bookLists.forEach(bookList ->
-                    books.add(bookRepository.findById((long) bookList.getBookListId().getBook_id()).get()));
+                    bookRepository.findById(bookList.getBookListId().getBook_id()).ifPresent(books::add));
 
             return (books.isEmpty()) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildResponse(HttpStatus.OK, convertToJson(userList, books));
         } catch (Exception e) {
@@ -76,6 +121,28 @@ public class BookListController {
     }
 
 
+    /**
+     * URL: [GET] /api/users/{user_id}/library?ids={book_id,book_id}
+     * Example: /api/users/32/library?ids=4,7,8
+     *
+     * Note: for badges on a page of books, which of the user's lists hold each book
+     *
+     * @return { "lists": { list_id: list_name }, "books": { book_id: [list_id] } }
+     */
+    @RequestMapping(path = "/users/{id}/library", method = {RequestMethod.GET})
+    public ResponseEntity getLibraryMembership(@PathVariable(value = "id") long id, @RequestParam(value = "ids") String ids) {
+        List<Long> _ids = multiGet.parseIds(ids);
+        try {
+            Map<String, Object> membership = new LinkedHashMap<>();
+            membership.put("lists", libraryIndex.listNames(id));
+            membership.put("books", libraryIndex.listsOf(id, _ids));
+            return buildResponse(HttpStatus.OK, membership);
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get lists\" }");
+        }
+    }
+
+
     /**
      * body: {
      * "user_id": long,
@@ -97,7 +164,12 @@ public class BookListController {
     @RequestMapping(path = "/users/{id}/list", method = {RequestMethod.POST})
     public ResponseEntity createList(@RequestBody UserList userList) {
         try {
-            return buildResponse(HttpStatus.CREATED, storeUserList(userList));
+            UserList _userList = transactionTemplate.execute(status -> {
+                UserList stored = storeUserList(userList);
+                changeLog.listChanged(stored.getUser_id(), stored.getList_id());
+                return stored;
+            });
+            return buildResponse(HttpStatus.CREATED, _userList);
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't create list\" }");
         }
@@ -128,40 +200,57 @@ public class BookListController {
             JsonNode jsonNode = mapper.readTree(json);
             long book_id = jsonNode.findValue("book_id").asLong();
             long list_id = jsonNode.findValue("list_id").asLong();
-            String progressString = "0";
+            long progress = 0;
 
             UserList userList = userListRepository.findByListId(list_id);
-            if(userList.getList_name().equals("Finished")){
-                progressString = bookRepository.findById(book_id).get().getPages();
-            }
+            if (userList == null)
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There was a problem, this list doesn't exists\" }");
 
-            Long progress = updateProgress(book_id, list_id, progressString);
+            Book book = bookRepository.findById(book_id).orElse(null);
+            if (book == null)
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There was a problem, this book doesn't exists\" }");
 
-            if (progress == null) {
-                return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, progress must be lowest than number of the book pages or higher than zero.\" }");
+            // A book whose number of pages isn't known is finished at 0, like updateProgress allows
+            if(userList.getList_name().equals("Finished") && book.getPages() != null){
+                progress = book.getPages();
             }
 
-            String finalProgress = "" + progress;
-
-            BookListId bookListId = new BookListId(list_id,book_id);
-
-            if (storeBookList(bookListId, finalProgress) == null)
+            long _progress = progress;
+            BookList bookList = transactionTemplate.execute(status -> {
+                BookList stored = (updateProgress(book_id, list_id, _progress) == null) ? null
+                        : storeBookList(new BookListId(list_id, book_id), _progress);
+                if (stored == null) {
+                    status.setRollbackOnly();
+                    return null;
+                }
+                changeLog.bookChanged(userList.getUser_id(), list_id, book_id, false);
+                return stored;
+            });
+            if (bookList == null)
                 return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't add to list\" }");
-            return buildResponse(HttpStatus.CREATED, storeBookList(bookListId, finalProgress));
+
+            suggestIndex.recordListChange(book_id, 1);
+            recommendationEngine.onBookAdded(userList.getUser_id(), book_id);
+            trendingEngine.onBookAdded(book_id);
+            return buildResponse(HttpStatus.CREATED, bookList);
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't add to list\" }");
         }
     }
 
-    private Long updateProgress(long book_id, long list_id, String progressString) {
+    /**
+     * Call in a transaction, the progress and its changes are saved together
+     */
+    private Long updateProgress(long book_id, long list_id, long progress) {
         UserList userList = userListRepository.findByListId(list_id);
+        if (userList == null)
+            return null;
 
         List<UserList> userLists = userListRepository.findByUserId(userList.getUser_id());
 
-        long book_num_pages = Long.parseLong(bookRepository.findById(book_id).get().getPages());
-
-        long progress = Long.parseLong(progressString);
-        if (progress > book_num_pages || progress < 0) {
+        // Without a number of pages only the lower bound can be checked
+        Integer book_num_pages = bookRepository.findById(book_id).map(Book::getPages).orElse(null);
+        if (progress < 0 || (book_num_pages != null && progress > book_num_pages)) {
             return null;
         }
 
@@ -169,8 +258,9 @@ public class BookListController {
             BookList bookList = bookListRepository.getBookList(ulist.getList_id(), book_id);
             if(bookList==null)
                 continue;
-            bookList.setProgress("" + progress);
+            bookList.setProgress(progress);
             bookListRepository.save(bookList);
+            changeLog.bookChanged(userList.getUser_id(), ulist.getList_id(), book_id, false);
         }
         return progress;
     }
@@ -188,13 +278,19 @@ public class BookListController {
             if (bookRepository.findById(bookId).isEmpty())
                 return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There was a problem, this book doesn't exists\" }");
 
-            if (userListRepository.findById(list_id).isEmpty())
+            UserList userList = userListRepository.findById(list_id).orElse(null);
+            if (userList == null)
                 return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There was a problem, this list doesn't exists\" }");
 
             if (bookListRepository.findById(new BookListId(list_id, bookId)).isEmpty())
                 return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There was a problem, specified book is not on specified list\" }");
 
-            bookListRepository.deleteById(new BookListId(list_id, bookId));
+            transactionTemplate.executeWithoutResult(status -> {
+                bookListRepository.deleteById(new BookListId(list_id, bookId));
+                changeLog.bookChanged(userList.getUser_id(), list_id, bookId, true);
+            });
+            suggestIndex.recordListChange(bookId, -1);
+            recommendationEngine.onBookRemoved(userList.getUser_id(), bookId);
 
             return buildResponse(HttpStatus.OK, "{ \"message\": \"Deleted successfully\" }");
         } catch (Exception e) {
@@ -228,21 +324,26 @@ public class BookListController {
 
             long book_id = jsonNode.findValue("book_id").asLong();
             long list_id = jsonNode.findValue("list_id").asLong();
-            String progressString = jsonNode.findValue("progress").asText();
+            long progress = Long.parseLong(jsonNode.findValue("progress").asText());
+
+            if (userListRepository.findByListId(list_id) == null)
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There was a problem, this list doesn't exists\" }");
+            if (!bookRepository.existsById(book_id))
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There was a problem, this book doesn't exists\" }");
 
-            Long progress = updateProgress(book_id, list_id, progressString);
-            if (progress == null) {
+            if (transactionTemplate.execute(status -> updateProgress(book_id, list_id, progress)) == null) {
                 return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, progress must be lowest than number of the book pages or higher than zero.\" }");
             }
+            trendingEngine.onProgress(book_id);
             return buildResponse(HttpStatus.CREATED, "{ \"message\": \"Progress updated\" }");
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't add to list\" }");
         }
     }
 
-    private String convertToJson(UserList userList, List<Book> books) {
+    private String convertToJson(UserList userList, List<?> books) {
         Gson gson = new Gson();
-        return "{\"list_name\": \"" + userList.getList_name() + "\" , \"list_description\": \"" + userList.getList_description() + "\", \"books\": " + gson.toJson(books) + "}";
+        return "{\"list_name\": \"" + userList.getList_name() + "\" , \"list_description\": \"" + userList.getList_description() + "\", \"books\": " + JsonProfiler.toJson(gson, books, "books") + "}";
     }
 
 
@@ -261,21 +362,13 @@ public class BookListController {
 
 
     public boolean isNumeric(String strNum) {
-        if (strNum == null)
-            return false;
-
-        try {
-            Long.parseLong(strNum);
-        } catch (NumberFormatException nfe) {
-            return false;
-        }
-        return true;
+        return Numbers.isLong(strNum);
     }
 
 
     private UserList getNameResponse(long id, @PathVariable("userId") String list_name) {
         UserList userList = userListRepository.getUserListId(id, list_name);
-        if (userList.getList_name().equals(""))
+        if (userList == null || userList.getList_name().equals(""))
             return null;
 
         return userList;
@@ -284,8 +377,7 @@ public class BookListController {
 
     private UserList getIDResponse(@PathVariable("userId") String list_id) {
         long _id = Long.parseLong(list_id);
-        UserList userList = userListRepository.findById(_id).get();
-        return userList;
+        return userListRepository.findById(_id).orElse(null);
     }
 
 
@@ -295,7 +387,7 @@ public class BookListController {
     }
 
 
-    private BookList storeBookList(BookListId bookListId, String progress) {
+    private BookList storeBookList(BookListId bookListId, long progress) {
 
         BookList bookList = bookListRepository.getBookList(bookListId.getList_id(), bookListId.getBook_id());
 
@@ -2,19 +2,40 @@ package es.ulpgc.LectioBackend.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import es.ulpgc.LectioBackend.clubs.ClubDeadlines;
+import es.ulpgc.LectioBackend.clubs.ClubDirectory;
+import es.ulpgc.LectioBackend.clubs.ClubEvent;
+import es.ulpgc.LectioBackend.clubs.ClubEventBus;
+import es.ulpgc.LectioBackend.clubs.ClubPage;
+import es.ulpgc.LectioBackend.clubs.ClubRanking;
+import es.ulpgc.LectioBackend.clubs.ClubRating;
 import es.ulpgc.LectioBackend.model.*;
+import es.ulpgc.LectioBackend.purge.PurgeWorker;
 import es.ulpgc.LectioBackend.repository.ClubPunctuationRepository;
 import es.ulpgc.LectioBackend.repository.ClubRepository;
 import es.ulpgc.LectioBackend.repository.ClubSubscribersRepository;
+import es.ulpgc.LectioBackend.repository.MultiGet;
 import es.ulpgc.LectioBackend.repository.UserRepository;
+import es.ulpgc.LectioBackend.sync.ChangeLog;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @CrossOrigin
 @RestController
@@ -33,6 +54,32 @@ public class ClubController {
     @Autowired
     ClubPunctuationRepository clubPunctuationRepository;
 
+    @Autowired
+    ClubRanking clubRanking;
+
+    @Autowired
+    ClubDirectory clubDirectory;
+
+    @Autowired
+    ClubEventBus clubEventBus;
+
+    @Autowired
+    ClubDeadlines clubDeadlines;
+
+    @Autowired
+    MultiGet multiGet;
+
+    @Autowired
+    ChangeLog changeLog;
+
+    @Autowired
+    PurgeWorker purgeWorker;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    private static final int MAX_RANKING_LIMIT = 100;
+
 
     /**
      * body: {
@@ -61,7 +108,12 @@ public class ClubController {
             Club newClub = new Club(club.getClub_name(), club.getClub_description(), club.getBook_id(),
                     club.getCreator(), club.getRead_time());
 
-            return buildResponse(HttpStatus.CREATED, clubRepository.save(newClub));
+            Club savedClub = clubRepository.save(newClub);
+            clubRanking.addClub(savedClub.getId());
+            clubDirectory.addClub(savedClub);
+            clubDeadlines.update(savedClub);
+
+            return buildResponse(HttpStatus.CREATED, savedClub);
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT,
                     "{ \"message\": \"Couldn't create club, there was a conflict\" }");
@@ -72,15 +124,111 @@ public class ClubController {
     /**
      * URL: [GET] /api/clubs
      *
+     * Streamed in chunks, prefer /api/clubs/discover for paginated results.
+     *
      * @return List
      */
     @RequestMapping(path = "/clubs", method = {RequestMethod.GET})
-    public ResponseEntity getClubs() {
+    public ResponseEntity<StreamingResponseBody> getClubs(HttpServletResponse response) {
+        return buildResponse(HttpStatus.OK, streamed(response, clubDirectory::writeAll,
+                "Couldn't find clubs, there was a conflict"));
+    }
+
+
+    /**
+     * URL: [GET] /api/clubs?ids={id,id}
+     * Example: /api/clubs?ids=3,7,9
+     *
+     * Note: clubs keyed by id, null for the ids that don't exist
+     *
+     * @return Map
+     */
+    @RequestMapping(path = "/clubs", method = {RequestMethod.GET}, params = "ids")
+    public ResponseEntity getClubsByIds(@RequestParam(value = "ids") String ids) {
+        List<Long> _ids = multiGet.parseIds(ids);
         try {
-            return buildResponse(HttpStatus.OK, clubRepository.findAll());
+            return buildResponse(HttpStatus.OK, multiGet.findAll(Club.class, _ids));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get clubs\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/clubs/discover?q={text}&book_id={book_id}&ending_within_hours={hours}&after={club_id}&limit={num_limit}
+     * Example: /api/clubs/discover?q=poes&ending_within_hours=48&limit=20
+     * Next page: /api/clubs/discover?q=poes&ending_within_hours=48&limit=20&after={next}
+     *
+     * Every parameter is optional. q words are matched as prefixes of the club name and description words.
+     *
+     * @return { "next": Number or null, "clubs": List }
+     */
+    @RequestMapping(path = "/clubs/discover", method = {RequestMethod.GET})
+    public ResponseEntity<StreamingResponseBody> discoverClubs(@RequestParam(required = false) String q,
+                                                              @RequestParam(required = false) Long book_id,
+                                                              @RequestParam(required = false) Long ending_within_hours,
+                                                              @RequestParam(required = false, defaultValue = "0") long after,
+                                                              @RequestParam(required = false, defaultValue = "20") int limit,
+                                                              HttpServletResponse response) {
+        try {
+            int _limit = Math.max(1, Math.min(limit, ClubDirectory.MAX_PAGE_SIZE));
+            long now = System.currentTimeMillis();
+            Long ends_before = (ending_within_hours == null) ? null : now + ending_within_hours * 3_600_000L;
+
+            ClubPage page = clubDirectory.discover(q, book_id, now, ends_before, Math.max(0, after), _limit);
+            return buildResponse(HttpStatus.OK, streamed(response, out -> clubDirectory.writePage(page, out),
+                    "Couldn't find clubs, there was a conflict"));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, message("Couldn't find clubs, there was a conflict"));
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/clubs/ranking?sort={rating|subscribers}&offset={page}&limit={num_limit}
+     * Example: /api/clubs/ranking?sort=rating&offset=0&limit=10
+     * Note: Ranked clubs the database no longer has are skipped, reading further down the ranking
+     * to fill the page
+     *
+     * @return List of { "club": Club, "rating": { "average", "score", "count", "distribution", "subscribers" } }
+     */
+    @RequestMapping(path = "/clubs/ranking", method = {RequestMethod.GET})
+    public ResponseEntity getClubRanking(@RequestParam(required = false, defaultValue = ClubRanking.BY_RATING) String sort,
+                                         @RequestParam(required = false, defaultValue = "0") int offset,
+                                         @RequestParam(required = false, defaultValue = "20") int limit) {
+        try {
+            if (!sort.equals(ClubRanking.BY_RATING) && !sort.equals(ClubRanking.BY_SUBSCRIBERS))
+                return buildResponse(HttpStatus.BAD_REQUEST,
+                        "{ \"message\": \"sort must be rating or subscribers\" }");
+
+            int _limit = Math.max(0, Math.min(limit, MAX_RANKING_LIMIT));
+            int position = (int) Math.min(Integer.MAX_VALUE, (long) Math.max(0, offset) * _limit);
+
+            List<Map<String, Object>> result = new ArrayList<>();
+            while (result.size() < _limit) {
+                int wanted = _limit - result.size();
+                List<ClubRating> ranking = clubRanking.ranking(sort, position, wanted);
+                position += ranking.size();
+
+                List<Long> ids = ranking.stream().map(ClubRating::getClub_id).collect(Collectors.toList());
+                Map<Long, Club> clubs = clubRepository.findAllById(ids).stream()
+                        .collect(Collectors.toMap(Club::getId, Function.identity()));
+
+                for (ClubRating rating : ranking) {
+                    if (!clubs.containsKey(rating.getClub_id()))
+                        continue;
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("club", clubs.get(rating.getClub_id()));
+                    entry.put("rating", rating);
+                    result.add(entry);
+                }
+                if (ranking.size() < wanted)
+                    break;
+            }
+            return buildResponse(HttpStatus.OK, result);
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT,
-                    "{ \"message\": \"Couldn't find clubs, there was a conflict\" }");
+                    "{ \"message\": \"Couldn't get club ranking, there was a conflict\" }");
         }
     }
 
@@ -94,7 +242,10 @@ public class ClubController {
     public ResponseEntity subscribeClub(@RequestParam(value = "user_id") long userId, @RequestParam(value = "club_id") long clubId, @RequestBody(required = false) String password) {
         try {
 
-            Club club = clubRepository.findById(clubId).get();
+            Club club = clubRepository.findById(clubId).orElse(null);
+            if (club == null)
+                return buildResponse(HttpStatus.NOT_FOUND,
+                        "{ \"message\": \"Couldn't subscribe to the club, there isn't any club with id " + clubId + "\" }");
 
             ClubSubscribers clubSub = clubSubscribersRepository.findByClubIdAndUserId(userId, clubId);
             if (clubSub != null) {
@@ -102,9 +253,16 @@ public class ClubController {
                         "{ \"message\": \"Couldn't subscribe to the club, already subscribed\" }");
             }
             club.increaseSubscribers();
-            clubRepository.save(club);
+            ClubSubscribers subscription = transactionTemplate.execute(status -> {
+                clubRepository.save(club);
+                ClubSubscribers saved = clubSubscribersRepository.save(new ClubSubscribers(new ClubSubscribersId(userId, clubId)));
+                changeLog.subscriptionChanged(userId, clubId, false);
+                return saved;
+            });
+            clubRanking.setSubscribers(clubId, club.getNum_subscribers());
+            clubEventBus.publish(ClubEvent.of(ClubEvent.SUBSCRIBED, club, userId));
 
-            return buildResponse(HttpStatus.OK, clubSubscribersRepository.save(new ClubSubscribers(new ClubSubscribersId(userId, clubId))));
+            return buildResponse(HttpStatus.OK, subscription);
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT,
                     "{ \"message\": \"Couldn't subscribe to the club, there was a conflict\" }");
@@ -121,7 +279,10 @@ public class ClubController {
     public ResponseEntity unsubscribeClub(@RequestParam(value = "user_id") long userId, @RequestParam(value = "club_id") long clubId, @RequestBody(required = false) String password) {
         try {
 
-            Club club = clubRepository.findById(clubId).get();
+            Club club = clubRepository.findById(clubId).orElse(null);
+            if (club == null)
+                return buildResponse(HttpStatus.NOT_FOUND,
+                        "{ \"message\": \"Couldn't unsubscribe to the club, there isn't any club with id " + clubId + "\" }");
 
             ClubSubscribers clubSub = clubSubscribersRepository.findByClubIdAndUserId(userId, clubId);
             if (clubSub == null) {
@@ -129,8 +290,13 @@ public class ClubController {
                         "{ \"message\": \"Couldn't unsubscribe to the club, user is not subscribed\" }");
             }
             club.decreaseSubscribers();
-            clubRepository.save(club);
-            clubSubscribersRepository.delete(clubSub);
+            transactionTemplate.executeWithoutResult(status -> {
+                clubRepository.save(club);
+                clubSubscribersRepository.delete(clubSub);
+                changeLog.subscriptionChanged(userId, clubId, true);
+            });
+            clubRanking.setSubscribers(clubId, club.getNum_subscribers());
+            clubEventBus.publish(ClubEvent.of(ClubEvent.UNSUBSCRIBED, club, userId));
 
             return buildResponse(HttpStatus.OK, "{ \"message\": \"Unsubscribed successfully of club " + club.getClub_name() + "\" }");
         } catch (Exception e) {
@@ -151,10 +317,8 @@ public class ClubController {
             List<ClubSubscribers> clubsSubscribed = clubSubscribersRepository.findClubsSubscribed(user_id);
 
             List<Club> clubs = new ArrayList<>();
-            clubsSubscribed.forEach(c -> {
-                Club club = clubRepository.findById(c.getClubSubscribersId().getClub_id()).get();
-                clubs.add(club);
-            });
+            // Deleted clubs are left out until their subscriptions are purged
+            clubsSubscribed.forEach(c -> clubRepository.findById(c.getClubSubscribersId().getClub_id()).ifPresent(clubs::add));
             return buildResponse(HttpStatus.OK, clubs);
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT,
@@ -163,6 +327,53 @@ public class ClubController {
     }
 
 
+    /**
+     * URL: [GET] /api/users/{user_id}/clubs/events
+     *
+     * Server-Sent Events stream with the changes of the clubs the user is subscribed to.
+     * Event names: book_changed, subscribed, unsubscribed, deleted, period_ended. Data: ClubEvent as JSON.
+     * The connection may be closed by the server at any time, clients should reconnect.
+     *
+     * @return text/event-stream
+     */
+    @RequestMapping(path = "/users/{user_id}/clubs/events", method = {RequestMethod.GET}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getClubEvents(@PathVariable(value = "user_id") long user_id) {
+        return clubEventBus.connect(user_id);
+    }
+
+
+    /**
+     * URL: [GET] /api/clubs/events/stats
+     *
+     * @return open connections and published, dropped and evicted counters
+     */
+    @RequestMapping(path = "/clubs/events/stats", method = {RequestMethod.GET})
+    public ResponseEntity getClubEventStats() {
+        try {
+            return buildResponse(HttpStatus.OK, clubEventBus.stats());
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT,
+                    "{ \"message\": \"Couldn't get club events stats, there was a conflict\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/clubs/deadlines/stats
+     *
+     * @return pending and expired reading periods
+     */
+    @RequestMapping(path = "/clubs/deadlines/stats", method = {RequestMethod.GET})
+    public ResponseEntity getClubDeadlineStats() {
+        try {
+            return buildResponse(HttpStatus.OK, clubDeadlines.stats());
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT,
+                    "{ \"message\": \"Couldn't get club deadlines stats, there was a conflict\" }");
+        }
+    }
+
+
     /**
      * body: {
      * "book_id": long,
@@ -183,7 +394,10 @@ public class ClubController {
             long club_id = jsonNode.findValue("club_id").asLong();
             String finishDate = jsonNode.findValue("date").asText();
 
-            Club club = clubRepository.findById(club_id).get();
+            Club club = clubRepository.findById(club_id).orElse(null);
+            if (club == null)
+                return buildResponse(HttpStatus.NOT_FOUND,
+                        "{ \"message\": \"Couldn't update club, there isn't any club with id " + club_id + "\" }");
             club.setBook_id(book_id);
             club.setRead_time(finishDate);
 
@@ -192,7 +406,16 @@ public class ClubController {
                         "{ \"message\": \"Couldn't update club, read time must be Monthly or Weekly\" }");
             }
 
-            return buildResponse(HttpStatus.CREATED, clubRepository.save(club));
+            Club savedClub = transactionTemplate.execute(status -> {
+                Club saved = clubRepository.save(club);
+                changeLog.clubChanged(saved.getId(), false);
+                return saved;
+            });
+            clubDirectory.addClub(savedClub);
+            clubDeadlines.update(savedClub);
+            clubEventBus.publish(ClubEvent.of(ClubEvent.BOOK_CHANGED, savedClub, null));
+
+            return buildResponse(HttpStatus.CREATED, savedClub);
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT,
                     "{ \"message\": \"Couldn't update club, there was a conflict\" }");
@@ -203,19 +426,19 @@ public class ClubController {
     /**
      * URL: [DELETE] /api/clubs/{club_id}
      *
+     * Note: the subscriptions and punctuations of the club are deleted shortly after in the background
+     *
      * @return message String
      */
     @RequestMapping(path = "/clubs/{club_id}", method = {RequestMethod.DELETE})
     public ResponseEntity deleteClub(@PathVariable(value = "club_id") long clubId) {
         try {
-            Club club = (clubRepository.findById(clubId).isEmpty()) ? null : clubRepository.findById(clubId).get();
+            Club club = clubRepository.findById(clubId).orElse(null);
 
-            if (club == null)
+            if (club == null || !purgeWorker.deleteClub(club))
                 return buildResponse(HttpStatus.NOT_FOUND,
                         "{ \"message\": \"Couldn't delete the club, there isn't any club with id " + clubId + "\" }");
 
-            clubRepository.deleteById(clubId);
-
             return buildResponse(HttpStatus.OK, "{ \"message\": \"Delete of club  " + club.getClub_name() + " successfully \" }");
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT,
@@ -232,7 +455,12 @@ public class ClubController {
     @RequestMapping(path = "/clubs/librarian/{user_id}", method = {RequestMethod.GET})
     public ResponseEntity getCreatedClubs(@PathVariable(value = "user_id") long user_id) {
         try {
-            if (userRepository.findById(user_id).get().getRole().compareTo(Rol.Librarian) != 0) {
+            User user = userRepository.findById(user_id).orElse(null);
+            if (user == null)
+                return buildResponse(HttpStatus.NOT_FOUND,
+                        "{ \"message\": \"There isn't any user with id " + user_id + "\" }");
+
+            if (user.getRole().compareTo(Rol.Librarian) != 0) {
                 return buildResponse(HttpStatus.CONFLICT,
                         "{ \"message\": \"User id provided isn't a librarian\" }");
             }
@@ -268,13 +496,16 @@ public class ClubController {
     @RequestMapping(path = "/clubs/punctuation", method = {RequestMethod.POST})
     public ResponseEntity createPunctuation(@RequestBody ClubPunctuation punctuation) {
         try {
-            User user = userRepository.findById(punctuation.getUser_id()).get();
+            if (userRepository.findById(punctuation.getUser_id()).isEmpty())
+                return buildResponse(HttpStatus.NOT_FOUND,
+                        "{ \"message\": \"There isn't any user with id " + punctuation.getUser_id() + "\" }");
 
             ClubSubscribers club = clubSubscribersRepository.findByClubIdAndUserId(punctuation.getUser_id(), punctuation.getClub_id());
 
             if (club != null) {
                 ClubPunctuation newPunctuation = clubPunctuationRepository
                         .save(new ClubPunctuation(punctuation.getUser_id(), punctuation.getClub_id(), punctuation.getPunctuation()));
+                clubRanking.addPunctuation(newPunctuation.getClub_id(), newPunctuation.getPunctuation());
 
                 return buildResponse(HttpStatus.CREATED, newPunctuation);
             } else {
@@ -311,6 +542,31 @@ public class ClubController {
     }
 
 
+    /**
+     * The body is written after the handler returned, out of its try. If it fails before anything
+     * reached the client, the client gets a 409 with the message instead of the broken JSON. Once
+     * the response is committed it can only be cut short.
+     */
+    private StreamingResponseBody streamed(HttpServletResponse response, StreamingResponseBody body, String error) {
+        return out -> {
+            try {
+                body.writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                if (response.isCommitted())
+                    throw e;
+                response.resetBuffer();
+                response.setStatus(HttpStatus.CONFLICT.value());
+                message(error).writeTo(out);
+            }
+        };
+    }
+
+
+    private StreamingResponseBody message(String message) {
+        return out -> out.write(("{ \"message\": \"" + message + "\" }").getBytes(StandardCharsets.UTF_8));
+    }
+
+
     private <T> ResponseEntity<T> buildResponse(HttpStatus _status, T _body) {
         return ResponseEntity.status(_status)
                 .headers(setHeaders())
@@ -0,0 +1,132 @@
+package es.ulpgc.LectioBackend.controller;
+
+import es.ulpgc.LectioBackend.coalescing.RequestCoalescer;
+import es.ulpgc.LectioBackend.datasource.ReadRoutingInterceptor;
+import es.ulpgc.LectioBackend.datasource.ReplicaRoutingDataSource;
+import es.ulpgc.LectioBackend.library.LibraryIndex;
+import es.ulpgc.LectioBackend.migration.SchemaMigrations;
+import es.ulpgc.LectioBackend.purge.PurgeWorker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@CrossOrigin
+@RestController
+@RequestMapping("/api")
+public class MonitoringController {
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired(required = false)
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired(required = false)
+    private ReadRoutingInterceptor readRoutingInterceptor;
+
+    @Autowired
+    private SchemaMigrations schemaMigrations;
+
+    @Autowired
+    private LibraryIndex libraryIndex;
+
+    @Autowired
+    private PurgeWorker purgeWorker;
+
+
+    /**
+     * URL: [GET] /api/monitoring/coalescing
+     *
+     * @return per group { "requests", "databaseCalls", "shared", "coalescingRatio", "inFlight" }
+     */
+    @RequestMapping(path = "/monitoring/coalescing", method = {RequestMethod.GET})
+    public ResponseEntity getCoalescingStats() {
+        try {
+            return buildResponse(HttpStatus.OK, requestCoalescer.stats());
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get coalescing stats\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/monitoring/datasource
+     *
+     * @return { "enabled" } and, when reads go to replicas, { "primaryConnections", "replicaConnections",
+     * "fallbacks", "stickyClients", "replicas": [{ "name", "url", "healthy", "connections", "ejections" }] }
+     */
+    @RequestMapping(path = "/monitoring/datasource", method = {RequestMethod.GET})
+    public ResponseEntity getDataSourceStats() {
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("enabled", replicaRoutingDataSource != null);
+            if (replicaRoutingDataSource != null) {
+                stats.putAll(replicaRoutingDataSource.stats());
+                stats.put("stickyClients", readRoutingInterceptor.stickyClients());
+            }
+            return buildResponse(HttpStatus.OK, stats);
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get datasource stats\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/monitoring/migrations
+     *
+     * @return { "versions": [{ "version", "description", "state", "installed_at", "completed_at" }], "backfilling" }
+     */
+    @RequestMapping(path = "/monitoring/migrations", method = {RequestMethod.GET})
+    public ResponseEntity getMigrations() {
+        try {
+            return buildResponse(HttpStatus.OK, schemaMigrations.stats());
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get migrations\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/monitoring/library
+     *
+     * @return { "users", "hits", "loads" } of the list membership index
+     */
+    @RequestMapping(path = "/monitoring/library", method = {RequestMethod.GET})
+    public ResponseEntity getLibraryStats() {
+        return buildResponse(HttpStatus.OK, libraryIndex.stats());
+    }
+
+
+    /**
+     * URL: [GET] /api/monitoring/purge
+     *
+     * @return { "pendingUsers", "pendingClubs", "purging", "usersPurged", "clubsPurged", "rowsPurged", "failures" }
+     */
+    @RequestMapping(path = "/monitoring/purge", method = {RequestMethod.GET})
+    public ResponseEntity getPurgeStats() {
+        try {
+            return buildResponse(HttpStatus.OK, purgeWorker.stats());
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get purge stats\" }");
+        }
+    }
+
+
+    private <T> ResponseEntity<T> buildResponse(HttpStatus _status, T _body) {
+        return ResponseEntity.status(_status)
+                .headers(setHeaders())
+                .body(_body);
+    }
+
+
+    private HttpHeaders setHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
+        return headers;
+    }
+}
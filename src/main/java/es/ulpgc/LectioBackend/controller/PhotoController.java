@@ -0,0 +1,139 @@
+package es.ulpgc.LectioBackend.controller;
+
+import es.ulpgc.LectioBackend.error.BadRequestException;
+import es.ulpgc.LectioBackend.model.User;
+import es.ulpgc.LectioBackend.photo.PhotoStore;
+import es.ulpgc.LectioBackend.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+@CrossOrigin
+@RestController
+@RequestMapping("/api")
+public class PhotoController {
+
+    // Request attributes of Tomcat's sendfile, the connector writes the file itself once the request is done
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String CACHE_CONTROL = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+
+    @Autowired
+    private PhotoStore photoStore;
+
+    @Autowired
+    private UserRepository userRepository;
+
+
+    /**
+     * URL: [GET] /api/photos/{photo}?size={thumb}
+     * Example: /api/photos/9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.png?size=thumb
+     *
+     * Note: photo is the "photo" of a user. size is optional, thumb sends the thumbnail instead.
+     * A photo never changes, it can be cached forever. Doesn't need authentication
+     *
+     * @return the image
+     */
+    @RequestMapping(path = "/photos/{photo:.+}", method = {RequestMethod.GET})
+    public ResponseEntity getPhoto(@PathVariable(value = "photo") String photo,
+                                   @RequestParam(value = "size", required = false) String size,
+                                   HttpServletRequest request, HttpServletResponse response) {
+        try {
+            if (size != null && !PhotoStore.THUMBNAIL.equals(size))
+                return buildResponse(HttpStatus.BAD_REQUEST, "{ \"message\": \"size must be " + PhotoStore.THUMBNAIL + "\" }");
+
+            Path file = photoStore.find(photo, size);
+            if (file == null)
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There isn't any such photo\" }");
+
+            String etag = "\"" + photo + (size == null ? "" : "-" + size) + "\"";
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                return null;
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long length = channel.size();
+                response.setContentType(PhotoStore.mediaType(photo).toString());
+                response.setContentLengthLong(length);
+                if ("HEAD".equals(request.getMethod()))
+                    return null;
+
+                if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                    request.setAttribute(SENDFILE_FILENAME, file.toString());
+                    request.setAttribute(SENDFILE_START, 0L);
+                    request.setAttribute(SENDFILE_END, length);
+                    return null;
+                }
+                // Without sendfile, e.g. in a batched call, the file is copied in chunks and never read whole
+                WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+                long position = 0;
+                while (position < length)
+                    position += channel.transferTo(position, length - position, out);
+            }
+            return null;
+        } catch (IOException e) {
+            return response.isCommitted() ? null
+                    : buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't send the photo\" }");
+        }
+    }
+
+
+    /**
+     * URL: [PUT] /api/users/{userId}/photo
+     *
+     * body: the image, a JPEG, PNG or GIF
+     *
+     * Note: the "photo" of the user becomes the reference of the image, see /api/photos/{photo}
+     *
+     * @return User
+     */
+    @RequestMapping(path = "/users/{userId}/photo", method = {RequestMethod.PUT})
+    public ResponseEntity uploadPhoto(@PathVariable(value = "userId") long id, HttpServletRequest request) {
+        try {
+            User _user = userRepository.findById(id).orElse(null);
+            if (_user == null)
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There isn't any user with id " + id + "\" }");
+
+            _user.setPhoto(photoStore.store(request.getInputStream()));
+            return buildResponse(HttpStatus.ACCEPTED, userRepository.save(_user));
+        } catch (BadRequestException e) {
+            // An invalid photo, answered by ApiExceptionHandler
+            throw e;
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't store the photo\" }");
+        }
+    }
+
+
+    private HttpHeaders setHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
+        return headers;
+    }
+
+
+    private <T> ResponseEntity<T> buildResponse(HttpStatus _status, T _body) {
+        return ResponseEntity.status(_status)
+                .headers(setHeaders())
+                .body(_body);
+    }
+}
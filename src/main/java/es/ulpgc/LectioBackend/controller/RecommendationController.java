@@ -0,0 +1,121 @@
+package es.ulpgc.LectioBackend.controller;
+
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.recommendation.RecommendationEngine;
+import es.ulpgc.LectioBackend.recommendation.ScoredBook;
+import es.ulpgc.LectioBackend.recommendation.TrendingEngine;
+import es.ulpgc.LectioBackend.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@CrossOrigin
+@RestController
+@RequestMapping("/api")
+public class RecommendationController {
+
+    private static final int MAX_LIMIT = RecommendationEngine.TOP_K;
+
+    @Autowired
+    private RecommendationEngine recommendationEngine;
+
+    @Autowired
+    private TrendingEngine trendingEngine;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+
+    /**
+     * URL: [GET] /api/books/{bookId}/related?limit={num_limit}
+     * Example: /api/books/8/related?limit=5
+     *
+     * @return List of { "book": Book, "score": Number }
+     */
+    @RequestMapping(path = "/books/{bookId}/related", method = {RequestMethod.GET})
+    public ResponseEntity getRelatedBooks(@PathVariable(value = "bookId") long bookId,
+                                          @RequestParam(required = false, defaultValue = "10") int limit) {
+        try {
+            List<ScoredBook> related = recommendationEngine.related(bookId, Math.min(limit, MAX_LIMIT));
+            return (related.isEmpty()) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildResponse(HttpStatus.OK, withBooks(related));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get related books\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/users/{user_id}/recommendations?limit={num_limit}
+     * Example: /api/users/32/recommendations?limit=5
+     *
+     * @return List of { "book": Book, "score": Number }
+     */
+    @RequestMapping(path = "/users/{id}/recommendations", method = {RequestMethod.GET})
+    public ResponseEntity getRecommendations(@PathVariable(value = "id") long id,
+                                             @RequestParam(required = false, defaultValue = "10") int limit) {
+        try {
+            List<ScoredBook> recommended = recommendationEngine.recommendations(id, Math.min(limit, MAX_LIMIT));
+            return (recommended.isEmpty()) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildResponse(HttpStatus.OK, withBooks(recommended));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get recommendations\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/books/trending?limit={num_limit}
+     * Example: /api/books/trending?limit=10
+     *
+     * @return List of { "book": Book, "score": Number }
+     */
+    @RequestMapping(path = "/books/trending", method = {RequestMethod.GET})
+    public ResponseEntity getTrendingBooks(@RequestParam(required = false, defaultValue = "10") int limit) {
+        try {
+            List<ScoredBook> trending = trendingEngine.trending(Math.min(limit, TrendingEngine.TOP_K));
+            return (trending.isEmpty()) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildResponse(HttpStatus.OK, withBooks(trending));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get trending books\" }");
+        }
+    }
+
+
+    private List<Map<String, Object>> withBooks(List<ScoredBook> scored) {
+        List<Long> ids = scored.stream().map(ScoredBook::getBook_id).collect(Collectors.toList());
+        Map<Long, Book> books = bookRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (ScoredBook book : scored) {
+            if (!books.containsKey(book.getBook_id()))
+                continue;
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("book", books.get(book.getBook_id()));
+            entry.put("score", book.getScore());
+            result.add(entry);
+        }
+        return result;
+    }
+
+
+    private <T> ResponseEntity<T> buildResponse(HttpStatus _status, T _body) {
+        return ResponseEntity.status(_status)
+                .headers(setHeaders())
+                .body(_body);
+    }
+
+
+    private HttpHeaders setHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
+        return headers;
+    }
+}
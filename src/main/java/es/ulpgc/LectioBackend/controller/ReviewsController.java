@@ -1,8 +1,12 @@
 package es.ulpgc.LectioBackend.controller;
 
 import com.google.gson.Gson;
+import es.ulpgc.LectioBackend.coalescing.RequestCoalescer;
 import es.ulpgc.LectioBackend.model.Reviews;
 import es.ulpgc.LectioBackend.model.User;
+import es.ulpgc.LectioBackend.monitoring.JsonProfiler;
+import es.ulpgc.LectioBackend.projection.FieldSet;
+import es.ulpgc.LectioBackend.recommendation.TrendingEngine;
 import es.ulpgc.LectioBackend.repository.BookListRepository;
 import es.ulpgc.LectioBackend.repository.ReviewsRepository;
 import es.ulpgc.LectioBackend.repository.UserListRepository;
@@ -35,6 +39,12 @@ public class ReviewsController {
     @Autowired
     private BookListRepository bookListRepository;
 
+    @Autowired
+    private TrendingEngine trendingEngine;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
 
     /**
      * URL: [GET] /api/reviews?user_id={user_id}&book_id={book_id}
@@ -76,14 +86,19 @@ public class ReviewsController {
     @RequestMapping(path = "/reviews", method = {RequestMethod.POST})
     public ResponseEntity createReview(@RequestBody Reviews review) {
         try {
-            User user = userRepository.findById(review.getUser_id()).get();
+            User user = userRepository.findById(review.getUser_id()).orElse(null);
+            if (user == null)
+                return buildResponse(HttpStatus.NOT_FOUND,
+                        "{ \"message\": \"There isn't any user with id " + review.getUser_id() + "\" }");
 
+            // From the database, LibraryIndex is a cache of this instance and only serves reads
             if (reviewsRepository.bookIsFinished(user.getUser_id(), review.getBook_id()) == 1) {
                 String fullname = user.getFirstName() + " " + user.getLastName();
 
                 Reviews newReview = reviewsRepository.save(new Reviews(review.getBook_id(), review.getUser_id(),
                                                                 review.getComment(), review.getPunctuation(), fullname));
                 newReview.setCreated_at(Timestamp.from(Instant.now()));
+                trendingEngine.onReview(review.getBook_id());
 
                 return buildResponse(HttpStatus.CREATED, newReview);
             } else {
@@ -99,15 +114,39 @@ public class ReviewsController {
 
     /**
      * URL: [GET] /api/reviews/{book_id}?limit={num_limit}&offset={page}
-     * Example: /api/reviews/4?limit=3&offset=0
+     * Example: /api/reviews/4?limit=3&offset=0&fields=user_name,punctuation,comment
+     *
+     * Note: fields is optional, only the listed fields of each review are read and sent.
+     * Any of id, book_id, user_id, comment, punctuation, user_name and created_at
      *
      * @return List
      */
     @RequestMapping(path = "/reviews/{bookId}", method = {RequestMethod.GET})
-    public ResponseEntity getReviewsByBookId(@RequestParam(required = false) String offset, @RequestParam(required = false, defaultValue = "0") String limit, @PathVariable long bookId) {
+    public ResponseEntity getReviewsByBookId(@RequestParam(required = false) String offset, @RequestParam(required = false, defaultValue = "0") String limit, @PathVariable long bookId,
+                                             @RequestParam(value = "fields", required = false) String fields) {
+        FieldSet _fields = FieldSet.parse(fields, ReviewsRepository.FIELDS);
+        try {
+            String _offset = (offset == null) ? null : offset.trim();
+            String _limit = limit.trim();
+            String key = RequestCoalescer.key(Long.toString(bookId), _offset, _limit, (_fields == null) ? null : _fields.key());
+            return requestCoalescer.execute("reviews", key, () -> getReviews(_offset, _limit, bookId, _fields));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get books\" }");
+        }
+    }
+
+
+    private ResponseEntity getReviews(String offset, String limit, long bookId, FieldSet fields) {
         try {
-            List<Reviews> reviews;
-            if (offset == null || limit.equals("0")) {
+            List<?> reviews;
+            if (fields != null) {
+                boolean paginated = offset != null && !limit.equals("0");
+                int _limit = paginated ? Integer.valueOf(limit) : Integer.MAX_VALUE;
+                reviews = reviewsRepository.findFieldsByBookId(fields, bookId, _limit,
+                        paginated ? Integer.valueOf(offset) * _limit : 0);
+                if (!paginated)
+                    offset = "0";
+            } else if (offset == null || limit.equals("0")) {
                 reviews = new ArrayList<>(reviewsRepository.findAll());
                 offset = "0";
             } else {
@@ -130,9 +169,9 @@ public class ReviewsController {
     }
 
 
-    private String convertToJson(int offset, int limit, List<Reviews> reviews, long bookId) {
+    private String convertToJson(int offset, int limit, List<?> reviews, long bookId) {
         Gson gson = new Gson();
-        return "{\"numReviews\": " + reviewsRepository.countReviews(bookId) + ", \"page\": " + offset + ", \"size\": " + limit + ", \"reviews\": " + gson.toJson(reviews) + "}";
+        return "{\"numReviews\": " + reviewsRepository.countReviews(bookId) + ", \"page\": " + offset + ", \"size\": " + limit + ", \"reviews\": " + JsonProfiler.toJson(gson, reviews, "reviews") + "}";
     }
 
 
@@ -1,8 +1,15 @@
 package es.ulpgc.LectioBackend.controller;
 
+import es.ulpgc.LectioBackend.error.BadRequestException;
 import es.ulpgc.LectioBackend.model.UserList;
+import es.ulpgc.LectioBackend.photo.PhotoStore;
+import es.ulpgc.LectioBackend.projection.FieldSet;
+import es.ulpgc.LectioBackend.purge.PurgeWorker;
+import es.ulpgc.LectioBackend.repository.MultiGet;
 import es.ulpgc.LectioBackend.repository.UserListRepository;
 import es.ulpgc.LectioBackend.repository.UserRepository;
+import es.ulpgc.LectioBackend.sync.UserSync;
+import es.ulpgc.LectioBackend.util.Numbers;
 import es.ulpgc.LectioBackend.model.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -13,6 +20,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @CrossOrigin
 @RestController
@@ -27,6 +35,22 @@ public class UserController {
     private UserListRepository listRepository;
 
 
+    @Autowired
+    private MultiGet multiGet;
+
+
+    @Autowired
+    private UserSync userSync;
+
+
+    @Autowired
+    private PurgeWorker purgeWorker;
+
+
+    @Autowired
+    private PhotoStore photoStore;
+
+
     /**
      * URL: [GET] /api/users/{userId_or_email}
      *
@@ -40,20 +64,26 @@ public class UserController {
         try {
             return isNumeric(id) ? getIDResponse(id) : getEmailResponse(id);
         } catch (Exception e) {
-            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"Couldn't find user with id " + id + "\" }");
+            // id may be any text, it isn't echoed into the JSON
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"Couldn't find user, there was a conflict\" }");
         }
     }
 
 
     /**
-     * URL: [GET] /api/users/
+     * URL: [GET] /api/users?fields={field,field}
+     * Example: /api/users?fields=user_id,firstName,lastName
+     *
+     * Note: fields is optional, only the listed fields of each user are read and sent.
+     * Any of user_id, firstName, lastName, email, photo, role and additional
      *
      * @return List
      */
     @RequestMapping(path = "/users", method = {RequestMethod.GET})
-    public ResponseEntity getAllUsers() {
+    public ResponseEntity getAllUsers(@RequestParam(value = "fields", required = false) String fields) {
+        FieldSet _fields = FieldSet.parse(fields, UserRepository.FIELDS);
         try {
-            List<User> users = new ArrayList<>(userRepository.findAll());
+            List<?> users = (_fields == null) ? new ArrayList<>(userRepository.findAll()) : userRepository.findFields(_fields);
             return (users.isEmpty()) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildResponse(HttpStatus.OK, users);
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get users\" }");
@@ -61,6 +91,48 @@ public class UserController {
     }
 
 
+    /**
+     * URL: [GET] /api/users?ids={id,id}
+     * Example: /api/users?ids=32,33
+     *
+     * Note: users keyed by id, null for the ids that don't exist
+     *
+     * @return Map
+     */
+    @RequestMapping(path = "/users", method = {RequestMethod.GET}, params = "ids")
+    public ResponseEntity getUsersByIds(@RequestParam(value = "ids") String ids) {
+        List<Long> _ids = multiGet.parseIds(ids);
+        try {
+            return buildResponse(HttpStatus.OK, multiGet.findAll(User.class, _ids));
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't get users\" }");
+        }
+    }
+
+
+    /**
+     * URL: [GET] /api/users/{user_id}/sync?since={seq}
+     * Example: /api/users/32/sync?since=120
+     *
+     * Note: without since every list, list entry and subscribed club of the user is sent, with "full": true.
+     * Otherwise only what changed after since: the current "lists", "books" and "clubs" rows, and the keys of
+     * the removed ones in "deleted". Keep "seq" for the next sync, and sync again right away while "more" is true.
+     * No content when nothing changed
+     *
+     * @return { "seq", "full", "more", "lists", "books", "clubs", "deleted": { "lists", "books", "clubs" } }
+     */
+    @RequestMapping(path = "/users/{userId}/sync", method = {RequestMethod.GET})
+    public ResponseEntity syncUser(@PathVariable(value = "userId") long id,
+                                   @RequestParam(value = "since", required = false, defaultValue = "0") long since) {
+        try {
+            Map<String, Object> sync = userSync.sync(id, since);
+            return (sync == null) ? buildResponse(HttpStatus.NO_CONTENT, null) : buildResponse(HttpStatus.OK, sync);
+        } catch (Exception e) {
+            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't sync user " + id + "\" }");
+        }
+    }
+
+
     /**
      * body: {
      *     "firstName": String,
@@ -72,6 +144,8 @@ public class UserController {
      *     "additional": String (optional)
      * }
      *
+     * Note: a photo sent as a data URL is stored and replaced by its reference, see /api/photos/{photo}
+     *
      * URL: [POST] /api/users/
      *
      * @return User
@@ -80,6 +154,7 @@ public class UserController {
     public ResponseEntity createUser(@RequestBody User user) {
         try {
             user.setPassword(encodePassword(user.getPassword()));
+            user.setPhoto(photoStore.toReference(user.getPhoto()));
 
             User _user = store(user);
 
@@ -87,6 +162,9 @@ public class UserController {
             storeUserList(new UserList(_user.getUser_id(), "Finished", ""));
 
             return buildResponse(HttpStatus.CREATED, _user);
+        } catch (BadRequestException e) {
+            // An invalid photo, answered by ApiExceptionHandler
+            throw e;
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't create user\" }");
         }
@@ -96,13 +174,17 @@ public class UserController {
     /**
      * URL: [DELETE] /api/users/{userId}
      *
+     * Note: the user and the clubs they created are gone at once, their lists, subscriptions and
+     * reviews are deleted shortly after in the background
+     *
      * @return String
      */
     @RequestMapping(path = "/users/{userId}", method = {RequestMethod.DELETE})
     public ResponseEntity deleteUser(@PathVariable(value = "userId") long id) {
         try {
-            userRepository.deleteById(id);
-            return buildResponse(HttpStatus.OK, "{ \"message\": \"User deleted successfully\" }");
+            if (!purgeWorker.deleteUser(id))
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There isn't any user with id " + id + "\" }");
+            return buildResponse(HttpStatus.ACCEPTED, "{ \"message\": \"User deleted successfully\" }");
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't delete user with id " + id + "\" }");
         }
@@ -119,6 +201,8 @@ public class UserController {
      *     "additional": String (optional)
      * }
      *
+     * Note: a photo sent as a data URL is stored and replaced by its reference, see /api/photos/{photo}
+     *
      * URL: [PUT] /api/users/{userId}
      *
      * @return User
@@ -126,9 +210,15 @@ public class UserController {
     @RequestMapping(path = "/users/{userId}", method = {RequestMethod.PUT})
     public ResponseEntity updateUser(@PathVariable(value = "userId") long id, @RequestBody User user) {
         try {
-            User _user = userRepository.findById(id).get();
+            User _user = userRepository.findById(id).orElse(null);
+            if (_user == null)
+                return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"There isn't any user with id " + id + "\" }");
+            user.setPhoto(photoStore.toReference(user.getPhoto()));
             _user.updateAll(user);
             return buildResponse(HttpStatus.ACCEPTED, userRepository.save(_user));
+        } catch (BadRequestException e) {
+            // An invalid photo, answered by ApiExceptionHandler
+            throw e;
         } catch (Exception e) {
             return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"There was a problem, couldn't update user\" }");
         }
@@ -166,22 +256,14 @@ public class UserController {
 
 
     public boolean isNumeric(String strNum) {
-        if (strNum == null)
-            return false;
-
-        try {
-            Long.parseLong(strNum);
-        } catch (NumberFormatException nfe) {
-            return false;
-        }
-        return true;
+        return Numbers.isLong(strNum);
     }
 
 
     private ResponseEntity getEmailResponse(@PathVariable("userId") String email) {
         User _user = userRepository.findByEmail(email);
-        if (_user.getFirstName().equals(""))
-            return buildResponse(HttpStatus.CONFLICT, "{ \"message\": \"Couldn't find user with email " + email + "\" }");
+        if (_user == null)
+            return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"Couldn't find user with that email\" }");
 
         return buildResponse(HttpStatus.OK, _user);
     }
@@ -189,7 +271,10 @@ public class UserController {
 
     private ResponseEntity getIDResponse(@PathVariable("userId") String id) {
         long _id = Long.parseLong(id);
-        User _user = userRepository.findById(_id).get();
+        User _user = userRepository.findById(_id).orElse(null);
+        if (_user == null)
+            return buildResponse(HttpStatus.NOT_FOUND, "{ \"message\": \"Couldn't find user with id " + id + "\" }");
+
         return buildResponse(HttpStatus.OK, _user);
     }
 
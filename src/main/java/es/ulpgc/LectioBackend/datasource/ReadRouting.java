@@ -0,0 +1,66 @@
+package es.ulpgc.LectioBackend.datasource;
+
+/**
+ * Where the current thread may read from. Threads outside a request, like startup loads and
+ * scheduled jobs, read from the primary unless they run in a read-only transaction.
+ */
+public final class ReadRouting {
+
+    private static final ThreadLocal<State> STATE = new ThreadLocal<>();
+
+    private ReadRouting() {
+    }
+
+    /**
+     * The request only reads and its user hasn't written lately: replicas are fine.
+     */
+    public static void allowReplica() {
+        STATE.set(new State(false));
+    }
+
+    /**
+     * The request writes or follows a recent write of its user: everything goes to the primary.
+     */
+    public static void usePrimary() {
+        STATE.set(new State(true));
+    }
+
+    public static void clear() {
+        STATE.remove();
+    }
+
+    static boolean isReplicaAllowed() {
+        State state = STATE.get();
+        return state != null && !state.primary;
+    }
+
+    static boolean isPrimaryRequired() {
+        State state = STATE.get();
+        return state != null && state.primary;
+    }
+
+    /**
+     * Called when a write transaction takes a connection, so the rest of the request reads its own writes.
+     */
+    static void written() {
+        State state = STATE.get();
+        if (state != null) {
+            state.primary = true;
+            state.written = true;
+        }
+    }
+
+    public static boolean hasWritten() {
+        State state = STATE.get();
+        return state != null && state.written;
+    }
+
+    private static class State {
+        boolean primary;
+        boolean written;
+
+        State(boolean primary) {
+            this.primary = primary;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package es.ulpgc.LectioBackend.datasource;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets GET requests read from the replicas, except for users that wrote less than stickyMillis ago:
+ * their reads stay on the primary until the replicas have caught up, so they always see their own
+ * changes. Users are told apart by JWT subject, or by IP when anonymous.
+ */
+public class ReadRoutingInterceptor implements AsyncHandlerInterceptor {
+
+    private final long stickyMillis;
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    public ReadRoutingInterceptor(long stickyMillis) {
+        this.stickyMillis = stickyMillis;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (isRead(request) && !isSticky(client(request)))
+            ReadRouting.allowReplica();
+        else
+            ReadRouting.usePrimary();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!isRead(request) || ReadRouting.hasWritten())
+            lastWrites.put(client(request), System.currentTimeMillis());
+        ReadRouting.clear();
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReadRouting.clear();
+    }
+
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        lastWrites.values().removeIf(lastWrite -> now - lastWrite >= stickyMillis);
+    }
+
+    public int stickyClients() {
+        return lastWrites.size();
+    }
+
+    private boolean isSticky(String client) {
+        Long lastWrite = lastWrites.get(client);
+        return lastWrite != null && System.currentTimeMillis() - lastWrite < stickyMillis;
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+    }
+
+    private static String client(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && !(authentication instanceof AnonymousAuthenticationToken)
+                && authentication.getPrincipal() instanceof String)
+            return "user:" + authentication.getPrincipal();
+        return "ip:" + request.getRemoteAddr();
+    }
+}
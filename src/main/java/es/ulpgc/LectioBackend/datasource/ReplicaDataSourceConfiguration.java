@@ -0,0 +1,105 @@
+package es.ulpgc.LectioBackend.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits reads from writes when lectio.datasource.replicas.urls lists the read replicas. The primary
+ * is still configured with the spring.datasource properties, the replicas share its driver and, unless
+ * given their own, its credentials. Try it locally with the "replicas" profile, two embedded databases.
+ */
+@Configuration
+@ConditionalOnProperty("lectio.datasource.replicas.urls")
+public class ReplicaDataSourceConfiguration implements WebMvcConfigurer {
+
+    @Autowired
+    private DataSourceProperties properties;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${lectio.datasource.replicas.urls}")
+    private String[] urls;
+
+    @Value("${lectio.datasource.replicas.username:${spring.datasource.username:}}")
+    private String username;
+
+    @Value("${lectio.datasource.replicas.password:${spring.datasource.password:}}")
+    private String password;
+
+    @Value("${lectio.datasource.replicas.maximum-pool-size:10}")
+    private int maximumPoolSize;
+
+    @Value("${lectio.datasource.replicas.connection-timeout-ms:2000}")
+    private long connectionTimeout;
+
+    @Value("${lectio.datasource.replicas.validation-timeout-seconds:2}")
+    private int validationTimeout;
+
+    @Value("${lectio.datasource.sticky-ms:5000}")
+    private long stickyMillis;
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource() {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        List<HikariDataSource> replicas = new ArrayList<>(urls.length);
+        for (String url : urls) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + replicas.size());
+            replica.setJdbcUrl(url.trim());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setReadOnly(true);
+            replica.setMaximumPoolSize(maximumPoolSize);
+            replica.setConnectionTimeout(connectionTimeout);
+            // A replica that is down at startup is just ejected by the first health check
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primary, new ReplicaPool(replicas, validationTimeout));
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource() {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource());
+    }
+
+    @Bean
+    public ReadRoutingInterceptor readRoutingInterceptor() {
+        return new ReadRoutingInterceptor(stickyMillis);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Each call of a batch is routed on its own
+        registry.addInterceptor(readRoutingInterceptor()).addPathPatterns("/api/**").excludePathPatterns("/api/batch");
+    }
+
+    @Scheduled(fixedDelayString = "${lectio.datasource.replicas.health-check-interval-ms:5000}")
+    public void checkReplicas() {
+        replicaRoutingDataSource().checkHealth();
+        readRoutingInterceptor().sweep();
+    }
+}
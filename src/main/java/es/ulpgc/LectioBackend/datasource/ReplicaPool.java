@@ -0,0 +1,124 @@
+package es.ulpgc.LectioBackend.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The read replicas, taken in round-robin order. A replica that fails to hand out a connection is
+ * ejected until the health check finds it valid again, so reads fall back to the other replicas or,
+ * when none is left, to the primary. A replica whose pool is only busy is skipped, not ejected.
+ */
+public class ReplicaPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaPool.class);
+
+    private final List<Replica> replicas;
+    private final int validationTimeoutSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaPool(List<HikariDataSource> dataSources, int validationTimeoutSeconds) {
+        this.replicas = new ArrayList<>(dataSources.size());
+        for (HikariDataSource dataSource : dataSources)
+            replicas.add(new Replica(dataSource));
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * Connection from the next healthy replica, or null when every replica is ejected.
+     */
+    Connection getConnection() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy)
+                continue;
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replica.connections.incrementAndGet();
+                return connection;
+            } catch (SQLTransientConnectionException e) {
+                // Timed out waiting for the pool, which may just be saturated: the health check tells
+                LOGGER.debug("Replica {} is busy: {}", replica.dataSource.getPoolName(), e.getMessage());
+            } catch (SQLException e) {
+                eject(replica, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validates every replica, ejecting the broken ones and bringing back the ones that recovered.
+     * Each is checked with a connection of its own, opened outside the pool, so a pool with every
+     * connection in use is not taken for a broken replica.
+     */
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = DriverManager.getConnection(replica.dataSource.getJdbcUrl(), replica.credentials)) {
+                if (!connection.isValid(validationTimeoutSeconds))
+                    throw new SQLException("Connection is not valid");
+                if (!replica.healthy) {
+                    LOGGER.info("Replica {} is back", replica.dataSource.getPoolName());
+                    replica.healthy = true;
+                }
+            } catch (SQLException e) {
+                eject(replica, e);
+            }
+        }
+    }
+
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> stats = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            Map<String, Object> replicaStats = new LinkedHashMap<>();
+            replicaStats.put("name", replica.dataSource.getPoolName());
+            replicaStats.put("url", replica.dataSource.getJdbcUrl());
+            replicaStats.put("healthy", replica.healthy);
+            replicaStats.put("connections", replica.connections.get());
+            replicaStats.put("ejections", replica.ejections.get());
+            stats.add(replicaStats);
+        }
+        return stats;
+    }
+
+    private void eject(Replica replica, SQLException e) {
+        if (replica.healthy) {
+            LOGGER.warn("Ejecting replica {}: {}", replica.dataSource.getPoolName(), e.getMessage());
+            replica.healthy = false;
+            replica.ejections.incrementAndGet();
+        }
+    }
+
+    private static class Replica {
+        final HikariDataSource dataSource;
+        final Properties credentials = new Properties();
+        final AtomicLong connections = new AtomicLong();
+        final AtomicLong ejections = new AtomicLong();
+        volatile boolean healthy = true;
+
+        Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+            if (dataSource.getUsername() != null)
+                credentials.setProperty("user", dataSource.getUsername());
+            if (dataSource.getPassword() != null)
+                credentials.setProperty("password", dataSource.getPassword());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package es.ulpgc.LectioBackend.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends reads to the replicas and everything else to the primary. A connection is a read when it is
+ * taken by a read-only transaction, or outside a transaction during a request that ReadRouting
+ * allows on replicas. Must be wrapped in a LazyConnectionDataSourceProxy: transactions ask for their
+ * connection before they are marked read-only, the proxy delays that until the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final ReplicaPool replicas;
+
+    private final AtomicLong primaryConnections = new AtomicLong();
+    private final AtomicLong replicaConnections = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public ReplicaRoutingDataSource(DataSource primary, ReplicaPool replicas) {
+        this.primary = primary;
+        this.replicas = replicas;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (isRead()) {
+            Connection connection = replicas.getConnection();
+            if (connection != null) {
+                replicaConnections.incrementAndGet();
+                return connection;
+            }
+            fallbacks.incrementAndGet();
+        } else if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            ReadRouting.written();
+        }
+        primaryConnections.incrementAndGet();
+        return primary.getConnection();
+    }
+
+    /**
+     * Not supported: the primary and every replica are pools with their own credentials, and a pool
+     * doesn't hand out connections for other ones (Hikari throws the same).
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Credentials are set per pool");
+    }
+
+    public void checkHealth() {
+        replicas.checkHealth();
+    }
+
+    /**
+     * Called by Spring on shutdown.
+     */
+    public void close() {
+        if (primary instanceof Closeable) {
+            try {
+                ((Closeable) primary).close();
+            } catch (IOException e) {
+                // Shutting down anyway
+            }
+        }
+        replicas.close();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("primaryConnections", primaryConnections.get());
+        stats.put("replicaConnections", replicaConnections.get());
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("replicas", replicas.stats());
+        return stats;
+    }
+
+    private boolean isRead() {
+        if (ReadRouting.isPrimaryRequired())
+            return false;
+        if (TransactionSynchronizationManager.isActualTransactionActive())
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        return ReadRouting.isReplicaAllowed();
+    }
+}
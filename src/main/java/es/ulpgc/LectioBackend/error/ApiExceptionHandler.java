@@ -0,0 +1,67 @@
+package es.ulpgc.LectioBackend.error;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.HttpRequestMethodNotSupportedException;
+import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+
+/**
+ * Status and { "message" } of the exceptions that get out of a controller. Most of them come from
+ * binding the request, before the controller runs: /api/books/abc, a missing parameter, a body that
+ * isn't JSON. They are answered here instead of being sent to the /error page, which would take a
+ * second dispatch for every bad request.
+ */
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<String> handleBadRequest(BadRequestException e) {
+        return buildResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<String> handleTypeMismatch(MethodArgumentTypeMismatchException e) {
+        return buildResponse(HttpStatus.BAD_REQUEST, "Invalid " + e.getName());
+    }
+
+    @ExceptionHandler(MissingServletRequestParameterException.class)
+    public ResponseEntity<String> handleMissingParameter(MissingServletRequestParameterException e) {
+        return buildResponse(HttpStatus.BAD_REQUEST, "Missing parameter " + e.getParameterName());
+    }
+
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<String> handleUnreadableBody(HttpMessageNotReadableException e) {
+        return buildResponse(HttpStatus.BAD_REQUEST, "Invalid body");
+    }
+
+    @ExceptionHandler(HttpRequestMethodNotSupportedException.class)
+    public ResponseEntity<String> handleMethodNotSupported(HttpRequestMethodNotSupportedException e) {
+        HttpHeaders headers = setHeaders();
+        if (e.getSupportedHttpMethods() != null)
+            headers.setAllow(e.getSupportedHttpMethods());
+        return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED)
+                .headers(headers)
+                .body(message("Method " + e.getMethod() + " not allowed"));
+    }
+
+    private HttpHeaders setHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
+        return headers;
+    }
+
+    private ResponseEntity<String> buildResponse(HttpStatus _status, String message) {
+        return ResponseEntity.status(_status)
+                .headers(setHeaders())
+                .body(message(message));
+    }
+
+    private static String message(String message) {
+        return "{ \"message\": \"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\" }";
+    }
+}
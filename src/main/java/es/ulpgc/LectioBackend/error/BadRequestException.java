@@ -0,0 +1,14 @@
+package es.ulpgc.LectioBackend.error;
+
+/**
+ * Invalid input from the client, answered by ApiExceptionHandler with 400 and the message. Controllers
+ * let it through their own catches. Stackless: it is expected traffic, and the stack trace would be the
+ * most expensive part of it. Suppression is disabled too, so nothing can be added to an instance: one
+ * with a fixed message can be created once and thrown every time.
+ */
+public class BadRequestException extends RuntimeException {
+
+    public BadRequestException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,163 @@
+package es.ulpgc.LectioBackend.library;
+
+import es.ulpgc.LectioBackend.model.UserList;
+import es.ulpgc.LectioBackend.monitoring.CacheAccessEvent;
+import es.ulpgc.LectioBackend.repository.BookListRepository;
+import es.ulpgc.LectioBackend.repository.UserListRepository;
+import es.ulpgc.LectioBackend.sync.ChangeLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Which of a user's lists hold each book: per list, a bitmap of its book ids. A user's lists are read
+ * from userlists/booklists together with users.change_seq, which every list change increments (see
+ * ChangeLog), and are read again when the user's change_seq has moved, whichever instance made the
+ * change. Checking it is one lookup by primary key instead of the two list queries. The least recently
+ * used users are dropped past lectio.library.max-users. It only answers reads: checks that allow or
+ * refuse a write go to the database.
+ */
+@Service
+public class LibraryIndex {
+
+    @Autowired
+    private UserListRepository userListRepository;
+
+    @Autowired
+    private BookListRepository bookListRepository;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Value("${lectio.library.max-users:10000}")
+    private int maxUsers;
+
+    private final Map<Long, Library> libraries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Library> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    /**
+     * @return for each book, the ids of the user's lists holding it, in list order
+     */
+    public Map<Long, List<Long>> listsOf(long user_id, List<Long> book_ids) {
+        Library library = library(user_id);
+        Map<Long, List<Long>> lists = new LinkedHashMap<>();
+        synchronized (library) {
+            for (long book_id : book_ids) {
+                List<Long> holding = new ArrayList<>();
+                library.lists.forEach((list_id, list) -> {
+                    if (isIn(list, book_id))
+                        holding.add(list_id);
+                });
+                lists.put(book_id, holding);
+            }
+        }
+        return lists;
+    }
+
+    /**
+     * @return list id to list name, in list order
+     */
+    public Map<Long, String> listNames(long user_id) {
+        Library library = library(user_id);
+        Map<Long, String> names = new LinkedHashMap<>();
+        synchronized (library) {
+            library.lists.forEach((list_id, list) -> names.put(list_id, list.name));
+        }
+        return names;
+    }
+
+    /**
+     * The user is gone, drop their lists now instead of when they are read again.
+     */
+    public void invalidate(long user_id) {
+        synchronized (libraries) {
+            libraries.remove(user_id);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (libraries) {
+            stats.put("users", libraries.size());
+        }
+        stats.put("hits", hits.get());
+        stats.put("loads", loads.get());
+        stats.put("stale", stale.get());
+        return stats;
+    }
+
+    private Library library(long user_id) {
+        long seq = changeLog.currentSeq(user_id);
+        Library library;
+        synchronized (libraries) {
+            library = libraries.get(user_id);
+        }
+        boolean fresh = library != null && library.seq == seq;
+        CacheAccessEvent.record("library", user_id, fresh);
+        if (fresh) {
+            hits.incrementAndGet();
+            return library;
+        }
+        if (library != null)
+            stale.incrementAndGet();
+
+        // Read after seq: a change committed in between makes it stale, never a change missing from a fresh one
+        loads.incrementAndGet();
+        library = load(user_id, seq);
+        synchronized (libraries) {
+            Library loaded = libraries.get(user_id);
+            if (loaded == null || loaded.seq < seq)
+                libraries.put(user_id, library);
+        }
+        return library;
+    }
+
+    private Library load(long user_id, long seq) {
+        Library library = new Library(seq);
+        for (UserList userList : userListRepository.findByUserId(user_id))
+            library.lists.put(userList.getList_id(), new ListBooks(userList.getList_name()));
+        for (Object[] pair : bookListRepository.findListBookPairs(user_id)) {
+            ListBooks list = library.lists.get(((Number) pair[0]).longValue());
+            if (list != null)
+                list.books.set(((Number) pair[1]).intValue());
+        }
+        return library;
+    }
+
+    private static boolean isIn(ListBooks list, long book_id) {
+        return book_id >= 0 && book_id <= Integer.MAX_VALUE && list.books.get((int) book_id);
+    }
+
+    private static class Library {
+        final long seq;
+        final Map<Long, ListBooks> lists = new LinkedHashMap<>();
+
+        Library(long seq) {
+            this.seq = seq;
+        }
+    }
+
+    private static class ListBooks {
+        final String name;
+        final BitSet books = new BitSet();
+
+        ListBooks(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package es.ulpgc.LectioBackend.migration;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The schema of database/database.sql, which every database starts from.
+ */
+@Component
+public class BaselineMigration implements Migration {
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public String description() {
+        return "Baseline, database/database.sql";
+    }
+
+    @Override
+    public List<String> schema() {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,60 @@
+package es.ulpgc.LectioBackend.migration;
+
+import es.ulpgc.LectioBackend.model.Book;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page counts as an indexed integer column, books.num_pages, next to the varchar books.pages they were
+ * kept in. Book writes both and reads num_pages, parsing pages only for rows not backfilled yet. The
+ * varchar column can be dropped by a later version once no instance older than this one is running.
+ */
+@Component
+public class BookPagesMigration implements Migration {
+
+    @Override
+    public int version() {
+        return 2;
+    }
+
+    @Override
+    public String description() {
+        return "Integer books.num_pages";
+    }
+
+    @Override
+    public List<String> schema() {
+        return List.of(
+                "ALTER TABLE books ADD COLUMN IF NOT EXISTS num_pages int NULL",
+                "CREATE INDEX IF NOT EXISTS books_num_pages ON books (num_pages)");
+    }
+
+    @Override
+    public void backfill(JdbcTemplate jdbcTemplate, Throttle throttle) {
+        long after = 0;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, pages FROM books WHERE id > ? AND num_pages IS NULL ORDER BY id LIMIT ?",
+                    after, throttle.batchSize());
+            if (rows.isEmpty())
+                return;
+
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                after = ((Number) row.get("id")).longValue();
+                // Rows that aren't a number stay null, Book keeps reading them from pages
+                Integer pages = Book.parsePages((String) row.get("pages"));
+                if (pages != null)
+                    updates.add(new Object[]{pages, after});
+            }
+            if (!updates.isEmpty())
+                jdbcTemplate.batchUpdate("UPDATE books SET num_pages = ? WHERE id = ? AND num_pages IS NULL", updates);
+            if (!throttle.pause(rows.size()))
+                return;
+        }
+    }
+}
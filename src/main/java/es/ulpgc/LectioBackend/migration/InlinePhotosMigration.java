@@ -0,0 +1,70 @@
+package es.ulpgc.LectioBackend.migration;
+
+import es.ulpgc.LectioBackend.error.BadRequestException;
+import es.ulpgc.LectioBackend.photo.PhotoStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the photos kept inline in users.photo, as base64 data URLs, to the PhotoStore and leaves their
+ * reference in their place. The schema doesn't change; photos that aren't a valid image are kept as
+ * they are and logged.
+ */
+@Component
+public class InlinePhotosMigration implements Migration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InlinePhotosMigration.class);
+
+    @Autowired
+    private PhotoStore photoStore;
+
+    @Override
+    public int version() {
+        return 5;
+    }
+
+    @Override
+    public String description() {
+        return "Inline user photos to the photo store";
+    }
+
+    @Override
+    public List<String> schema() {
+        return List.of();
+    }
+
+    @Override
+    public void backfill(JdbcTemplate jdbcTemplate, Throttle throttle) {
+        long after = 0;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT user_id, photo FROM users WHERE user_id > ? AND photo LIKE 'data:%' ORDER BY user_id LIMIT ?",
+                    after, throttle.batchSize());
+            if (rows.isEmpty())
+                return;
+
+            for (Map<String, Object> row : rows) {
+                after = ((Number) row.get("user_id")).longValue();
+                String photo = (String) row.get("photo");
+                try {
+                    // Unless the user changed it meanwhile
+                    jdbcTemplate.update("UPDATE users SET photo = ? WHERE user_id = ? AND photo = ?",
+                            photoStore.toReference(photo), after, photo);
+                } catch (BadRequestException e) {
+                    LOGGER.warn("Photo of user {} left inline: {}", after, e.getMessage());
+                } catch (IOException e) {
+                    throw new IllegalStateException("Couldn't store the photo of user " + after, e);
+                }
+            }
+            if (!throttle.pause(rows.size()))
+                return;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package es.ulpgc.LectioBackend.migration;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * One version of the database schema. Migrations are Spring beans applied in version order by
+ * SchemaMigrations, and a version is never applied twice.
+ */
+public interface Migration {
+
+    int version();
+
+    String description();
+
+    /**
+     * Statements run at startup, before JPA starts, while holding the migration lock. Must be quick and
+     * must leave the tables usable by the previous version of the application, as instances are replaced
+     * one at a time: add columns and indexes here, fill them in backfill. A failure leaves the version
+     * unapplied and stops the startup, so the statements must also be safe to run again (IF NOT EXISTS).
+     */
+    List<String> schema();
+
+    /**
+     * Fills in data for the new schema in the background once the application is serving requests.
+     * Has to work in small batches of batchSize rows, each committed on its own, and has to be resumable:
+     * after a restart it runs again from the beginning and must skip what is already done.
+     */
+    default void backfill(JdbcTemplate jdbcTemplate, Throttle throttle) {
+    }
+
+    /**
+     * Pace of the backfills, so they don't compete with the requests for the database.
+     */
+    interface Throttle {
+
+        int batchSize();
+
+        /**
+         * Called after each batch, waits before the next one.
+         *
+         * @return false when the application is shutting down and the backfill must stop
+         */
+        boolean pause(int rows);
+    }
+}
@@ -0,0 +1,17 @@
+package es.ulpgc.LectioBackend.migration;
+
+import org.springframework.boot.autoconfigure.data.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Makes the EntityManagerFactory wait for the schema migrations, the same way Spring Boot does for Flyway.
+ */
+@Configuration
+public class MigrationConfiguration {
+
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor schemaMigrationsDependsOnPostProcessor() {
+        return new EntityManagerFactoryDependsOnPostProcessor(SchemaMigrations.BEAN_NAME);
+    }
+}
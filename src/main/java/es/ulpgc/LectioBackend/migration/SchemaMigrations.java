@@ -0,0 +1,173 @@
+package es.ulpgc.LectioBackend.migration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings the database to the latest Migration. Their schema statements run on startup, before the
+ * EntityManagerFactory is built, and their backfills on a background thread once the application is
+ * ready. Applied versions are recorded in schema_version; a version stays in state BACKFILL until its
+ * backfill finishes. On MariaDB a named lock keeps instances starting together from migrating at once.
+ */
+@Component(SchemaMigrations.BEAN_NAME)
+@Lazy(false)
+public class SchemaMigrations implements ApplicationListener<ApplicationReadyEvent> {
+
+    public static final String BEAN_NAME = "schemaMigrations";
+
+    private static final String BACKFILL = "BACKFILL";
+    private static final String COMPLETED = "COMPLETED";
+    private static final String LOCK = "lectio_schema_migrations";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private List<Migration> migrations;
+
+    @Value("${lectio.migrations.lock-timeout-seconds:300}")
+    private int lockTimeout;
+
+    @Value("${lectio.migrations.batch-size:500}")
+    private int batchSize;
+
+    @Value("${lectio.migrations.batch-pause-ms:50}")
+    private long batchPause;
+
+    private volatile boolean stopping;
+    private volatile String backfilling;
+
+    @PostConstruct
+    public void migrate() throws SQLException {
+        migrations.sort(Comparator.comparingInt(Migration::version));
+        try (Connection connection = dataSource.getConnection()) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            boolean locking = isMariaDb(connection);
+            if (locking && !Integer.valueOf(1).equals(jdbcTemplate.queryForObject("SELECT GET_LOCK(?, ?)", Integer.class, LOCK, lockTimeout)))
+                throw new IllegalStateException("Couldn't take the schema migration lock in " + lockTimeout + " seconds");
+            try {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                        "version int NOT NULL PRIMARY KEY, " +
+                        "description varchar(255) NOT NULL, " +
+                        "state varchar(16) NOT NULL, " +
+                        "installed_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                        "completed_at timestamp NULL DEFAULT NULL)");
+                Integer current = jdbcTemplate.queryForObject("SELECT MAX(version) FROM schema_version", Integer.class);
+                for (Migration migration : migrations) {
+                    if (current != null && migration.version() <= current)
+                        continue;
+                    LOGGER.info("Migrating schema to version {}: {}", migration.version(), migration.description());
+                    for (String statement : migration.schema())
+                        jdbcTemplate.execute(statement);
+                    jdbcTemplate.update("INSERT INTO schema_version (version, description, state) VALUES (?, ?, ?)",
+                            migration.version(), migration.description(), BACKFILL);
+                }
+            } finally {
+                if (locking)
+                    jdbcTemplate.queryForObject("SELECT RELEASE_LOCK(?)", Integer.class, LOCK);
+            }
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Thread thread = new Thread(this::backfill, "schema-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("versions", new JdbcTemplate(dataSource).queryForList(
+                "SELECT version, description, state, installed_at, completed_at FROM schema_version ORDER BY version"));
+        stats.put("backfilling", backfilling);
+        return stats;
+    }
+
+    /**
+     * Several instances may run the same backfill at once, each batch skips the rows already done.
+     */
+    private void backfill() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        List<Integer> pending = jdbcTemplate.queryForList("SELECT version FROM schema_version WHERE state = ?", Integer.class, BACKFILL);
+        List<Migration> backfills = new ArrayList<>();
+        for (Migration migration : migrations) {
+            if (pending.contains(migration.version()))
+                backfills.add(migration);
+        }
+
+        for (Migration migration : backfills) {
+            backfilling = migration.description();
+            Pace pace = new Pace();
+            try {
+                migration.backfill(jdbcTemplate, pace);
+            } catch (Exception e) {
+                LOGGER.warn("Backfill of schema version {} failed after {} rows, it will resume on the next start",
+                        migration.version(), pace.rows, e);
+                break;
+            } finally {
+                backfilling = null;
+            }
+            if (pace.stopped)
+                return;
+            jdbcTemplate.update("UPDATE schema_version SET state = ?, completed_at = CURRENT_TIMESTAMP WHERE version = ?",
+                    COMPLETED, migration.version());
+            LOGGER.info("Backfill of schema version {} completed, {} rows", migration.version(), pace.rows);
+        }
+    }
+
+    private static boolean isMariaDb(Connection connection) throws SQLException {
+        String product = connection.getMetaData().getDatabaseProductName().toLowerCase();
+        return product.contains("mariadb") || product.contains("mysql");
+    }
+
+    private class Pace implements Migration.Throttle {
+        long rows;
+        boolean stopped;
+
+        @Override
+        public int batchSize() {
+            return batchSize;
+        }
+
+        @Override
+        public boolean pause(int rows) {
+            this.rows += rows;
+            try {
+                if (!stopping)
+                    Thread.sleep(batchPause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopping = true;
+            }
+            stopped = stopping;
+            return !stopped;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package es.ulpgc.LectioBackend.migration;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * users.deleted_at and club.deleted_at: a deleted user or club is only marked and hidden at once, see
+ * PurgeWorker, which removes its rows later. Nothing is deleted yet, so there is nothing to backfill.
+ */
+@Component
+public class SoftDeleteMigration implements Migration {
+
+    @Override
+    public int version() {
+        return 4;
+    }
+
+    @Override
+    public String description() {
+        return "Soft delete of users and clubs";
+    }
+
+    @Override
+    public List<String> schema() {
+        return List.of(
+                "ALTER TABLE users ADD COLUMN IF NOT EXISTS deleted_at timestamp NULL DEFAULT NULL",
+                "ALTER TABLE club ADD COLUMN IF NOT EXISTS deleted_at timestamp NULL DEFAULT NULL",
+                "CREATE INDEX IF NOT EXISTS users_deleted_at ON users (deleted_at)",
+                "CREATE INDEX IF NOT EXISTS club_deleted_at ON club (deleted_at)");
+    }
+}
@@ -0,0 +1,38 @@
+package es.ulpgc.LectioBackend.migration;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * The change log behind /api/users/{id}/sync, see ChangeLog: a change counter per user and the last
+ * change of each of their lists, list entries and club subscriptions. Existing users start at 0, their
+ * first sync is a full one anyway, so there is nothing to backfill.
+ */
+@Component
+public class UserChangesMigration implements Migration {
+
+    @Override
+    public int version() {
+        return 3;
+    }
+
+    @Override
+    public String description() {
+        return "User change log for sync";
+    }
+
+    @Override
+    public List<String> schema() {
+        return List.of(
+                "ALTER TABLE users ADD COLUMN IF NOT EXISTS change_seq bigint NOT NULL DEFAULT 0",
+                "CREATE TABLE IF NOT EXISTS user_changes (" +
+                        "user_id int NOT NULL, " +
+                        "entity varchar(16) NOT NULL, " +
+                        "entity_key varchar(64) NOT NULL, " +
+                        "seq bigint NOT NULL, " +
+                        "deleted boolean NOT NULL, " +
+                        "PRIMARY KEY (user_id, entity, entity_key))",
+                "CREATE INDEX IF NOT EXISTS user_changes_seq ON user_changes (user_id, seq)");
+    }
+}
@@ -1,6 +1,7 @@
 package es.ulpgc.LectioBackend.model;
 
 import javax.persistence.*;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.Size;
 
 @Entity
@@ -23,9 +24,12 @@ public class Book {
     @Column(name = "publisher", nullable = false)
     private String publisher;
 
-    @Size(min = 1)
-    @Column(name = "pages", nullable = false)
-    private String pages;
+    @Min(1)
+    @Column(name = "num_pages")
+    private Integer pages;
+
+    // The varchar column num_pages replaces, see BookPagesMigration
+    private transient String pagesText;
 
     @Column(name = "isbn", unique=true, nullable = false)
     private String isbn;
@@ -36,10 +40,12 @@ public class Book {
     @Column(name = "synopsis")
     private String synopsis;
 
+    private transient String[] genreList;
+
     public Book() {
     }
 
-    public Book(String title, String author, String publisher, String pages, String isbn, String[] genres, String synopsis) {
+    public Book(String title, String author, String publisher, Integer pages, String isbn, String[] genres, String synopsis) {
         this.title = title;
         this.author = author;
         this.publisher = publisher;
@@ -53,6 +59,45 @@ public class Book {
         return String.join(",", list);
     }
 
+    /**
+     * @return the page count written in text, null if it isn't a number
+     */
+    public static Integer parsePages(String text) {
+        if (text == null)
+            return null;
+        String trimmed = text.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 9)
+            return null;
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (trimmed.charAt(i) < '0' || trimmed.charAt(i) > '9')
+                return null;
+        }
+        return Integer.valueOf(trimmed);
+    }
+
+    @PostLoad
+    private void readPagesText() {
+        if (pages == null)
+            pages = parsePages(pagesText);
+    }
+
+    /**
+     * Still written for the instances that only know this column.
+     */
+    @Access(AccessType.PROPERTY)
+    @Column(name = "pages", nullable = false)
+    protected String getPagesText() {
+        return (pages != null) ? pages.toString() : pagesText;
+    }
+
+    protected void setPagesText(String pagesText) {
+        this.pagesText = pagesText;
+    }
+
+    public long getId() {
+        return id;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -77,11 +122,11 @@ public class Book {
         this.publisher = publisher;
     }
 
-    public String getPages() {
+    public Integer getPages() {
         return pages;
     }
 
-    public void setPages(String pages) {
+    public void setPages(Integer pages) {
         this.pages = pages;
     }
 
@@ -94,11 +139,14 @@ public class Book {
     }
 
     public String[] getGenres() {
-        return genres.split(",");
+        if (genreList == null)
+            genreList = genres.split(",");
+        return genreList;
     }
 
     public void setGenres(String[] genres) {
         this.genres = parseToString(genres);
+        this.genreList = null;
     }
 
     public String getSynopsis() {
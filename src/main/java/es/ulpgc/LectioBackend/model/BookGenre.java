@@ -0,0 +1,28 @@
+package es.ulpgc.LectioBackend.model;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "book_genres")
+public class BookGenre {
+
+    @EmbeddedId
+    private BookGenreId bookGenreId;
+
+    public BookGenre() {
+    }
+
+    public BookGenre(BookGenreId bookGenreId) {
+        this.bookGenreId = bookGenreId;
+    }
+
+    public BookGenreId getBookGenreId() {
+        return bookGenreId;
+    }
+
+    public void setBookGenreId(BookGenreId bookGenreId) {
+        this.bookGenreId = bookGenreId;
+    }
+}
@@ -0,0 +1,54 @@
+package es.ulpgc.LectioBackend.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.util.Objects;
+
+@Embeddable
+public class BookGenreId implements Serializable {
+
+    @Column(name = "book_id")
+    private long book_id;
+
+    @Column(name = "genre_id")
+    private long genre_id;
+
+    public BookGenreId() {
+    }
+
+    public BookGenreId(long book_id, long genre_id) {
+        this.book_id = book_id;
+        this.genre_id = genre_id;
+    }
+
+    public long getBook_id() {
+        return book_id;
+    }
+
+    public void setBook_id(long book_id) {
+        this.book_id = book_id;
+    }
+
+    public long getGenre_id() {
+        return genre_id;
+    }
+
+    public void setGenre_id(long genre_id) {
+        this.genre_id = genre_id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BookGenreId that = (BookGenreId) o;
+        return book_id == that.book_id &&
+                genre_id == that.genre_id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(book_id, genre_id);
+    }
+}
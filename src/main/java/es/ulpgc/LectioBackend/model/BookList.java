@@ -16,9 +16,9 @@ public class BookList implements Serializable {
     public BookList() {
     }
 
-    public BookList(BookListId bookListId, String progress) {
+    public BookList(BookListId bookListId, long progress) {
         this.bookListId = bookListId;
-        this.progress = Long.parseLong(progress);
+        this.progress = progress;
     }
 
     public BookListId getBookListId() {
@@ -33,7 +33,7 @@ public class BookList implements Serializable {
         return progress;
     }
 
-    public void setProgress(String progress) {
-        this.progress = Long.parseLong(progress);
+    public void setProgress(long progress) {
+        this.progress = progress;
     }
 }
@@ -1,6 +1,8 @@
 package es.ulpgc.LectioBackend.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 import javax.validation.constraints.Size;
@@ -11,8 +13,10 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.Locale;
 
+// Deleted clubs stay until PurgeWorker removes them
 @Entity
 @Table(name = "club")
+@Where(clause = "deleted_at IS NULL")
 public class Club {
 
     @Id
@@ -105,10 +109,20 @@ public class Club {
         return (read_time == null) ? null : getStringFromDate(read_time);
     }
 
+    @JsonIgnore
+    public Date getRead_time_date() {
+        return read_time;
+    }
+
     public void setRead_time(String read_time) {
         this.read_time = getTimeToRead(read_time);
     }
 
+    public void clearReadingPeriod() {
+        this.book_id = null;
+        this.read_time = null;
+    }
+
     public long getNum_subscribers() {
         return num_subscribers;
     }
@@ -0,0 +1,38 @@
+package es.ulpgc.LectioBackend.model;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "genres", uniqueConstraints = {@UniqueConstraint(columnNames = {"name"})})
+public class Genre {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    public Genre() {
+    }
+
+    public Genre(String name) {
+        this.name = name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -1,10 +1,15 @@
 package es.ulpgc.LectioBackend.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.annotations.Where;
+
 import javax.persistence.*;
 import javax.validation.constraints.Size;
 
+// Deleted users stay until PurgeWorker removes them
 @Entity
 @Table(name = "users", uniqueConstraints = {@UniqueConstraint(columnNames = {"email"})})
+@Where(clause = "deleted_at IS NULL")
 public class User {
 
     @Id
@@ -25,6 +30,7 @@ public class User {
 
     @Size(min = 3)
     @Column(name = "password", nullable = false)
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String password;
 
     @Column(name = "photo", nullable = true)
@@ -0,0 +1,33 @@
+package es.ulpgc.LectioBackend.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("es.ulpgc.lectio.CacheAccess")
+@Label("Cache Access")
+@Category({"Lectio", "Cache"})
+@Description("Lookup in one of the in-process caches or indexes")
+public class CacheAccessEvent extends Event {
+
+    @Label("Cache")
+    public String cache;
+
+    @Label("Key")
+    public String key;
+
+    @Label("Hit")
+    public boolean hit;
+
+    public static void record(String cache, Object key, boolean hit) {
+        CacheAccessEvent event = new CacheAccessEvent();
+        if (!event.isEnabled())
+            return;
+        event.cache = cache;
+        event.key = String.valueOf(key);
+        event.hit = hit;
+        event.commit();
+    }
+}
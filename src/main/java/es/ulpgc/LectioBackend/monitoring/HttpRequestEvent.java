@@ -0,0 +1,29 @@
+package es.ulpgc.LectioBackend.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("es.ulpgc.lectio.HttpRequest")
+@Label("HTTP Request")
+@Category({"Lectio", "Web"})
+@Description("Time spent handling a request inside a Lectio controller")
+public class HttpRequestEvent extends Event {
+
+    @Label("Controller")
+    public String controller;
+
+    @Label("Handler Method")
+    public String method;
+
+    @Label("HTTP Method")
+    public String httpMethod;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Status")
+    public int status;
+}
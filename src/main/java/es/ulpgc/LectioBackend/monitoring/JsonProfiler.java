@@ -0,0 +1,43 @@
+package es.ulpgc.LectioBackend.monitoring;
+
+import com.google.gson.Gson;
+
+public final class JsonProfiler {
+
+    private JsonProfiler() {
+    }
+
+    /**
+     * Serializes with Gson and records a {@link JsonSerializationEvent} for the call.
+     */
+    public static String toJson(Gson gson, Object src, String source) {
+        JsonSerializationEvent event = new JsonSerializationEvent();
+        event.begin();
+        String json = gson.toJson(src);
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.payloadBytes = utf8Length(json);
+            event.commit();
+        }
+        return json;
+    }
+
+    static long utf8Length(CharSequence s) {
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,22 @@
+package es.ulpgc.LectioBackend.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("es.ulpgc.lectio.JsonSerialization")
+@Label("JSON Serialization")
+@Category({"Lectio", "Web"})
+@Description("Serialization of a response payload to JSON")
+public class JsonSerializationEvent extends Event {
+
+    @Label("Source")
+    public String source;
+
+    @Label("Payload Size")
+    @DataAmount
+    public long payloadBytes;
+}
@@ -0,0 +1,26 @@
+package es.ulpgc.LectioBackend.monitoring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Registers the Java Flight Recorder instrumentation. The events cost nothing unless a
+ * recording is running, e.g. java -XX:StartFlightRecording=settings=profile ...
+ */
+@Configuration
+public class MonitoringConfiguration implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestEventInterceptor()).addPathPatterns("/api/**");
+    }
+
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        return new ProfiledJacksonConverter(objectMapper);
+    }
+}
@@ -0,0 +1,75 @@
+package es.ulpgc.LectioBackend.monitoring;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps every call to the Spring Data repositories in a {@link RepositoryQueryEvent}.
+ */
+@Aspect
+@Component
+public class RepositoryEventAspect {
+
+    private static final String REPOSITORY_PACKAGE = "es.ulpgc.LectioBackend.repository";
+
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object recordQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+        RepositoryQueryEvent event = new RepositoryQueryEvent();
+        if (!event.isEnabled())
+            return joinPoint.proceed();
+
+        event.begin();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = joinPoint.proceed();
+            failed = false;
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.repository = repositoryName(joinPoint.getThis());
+                event.method = joinPoint.getSignature().getName();
+                event.rowCount = rowCount(result);
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    private String repositoryName(Object proxy) {
+        return repositoryNames.computeIfAbsent(proxy.getClass(), type -> {
+            for (Class<?> candidate : AopProxyUtils.proxiedUserInterfaces(proxy)) {
+                if (candidate.getName().startsWith(REPOSITORY_PACKAGE))
+                    return candidate.getSimpleName();
+            }
+            return type.getSimpleName();
+        });
+    }
+
+    private long rowCount(Object result) {
+        if (result == null)
+            return 0;
+        if (result instanceof Collection)
+            return ((Collection<?>) result).size();
+        if (result instanceof Optional)
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        if (result instanceof Iterable) {
+            long count = 0;
+            for (Object ignored : (Iterable<?>) result)
+                count++;
+            return count;
+        }
+        return 1;
+    }
+}
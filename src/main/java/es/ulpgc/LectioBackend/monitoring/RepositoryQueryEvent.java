@@ -0,0 +1,26 @@
+package es.ulpgc.LectioBackend.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("es.ulpgc.lectio.RepositoryQuery")
+@Label("Repository Query")
+@Category({"Lectio", "Persistence"})
+@Description("Call to a Spring Data repository method")
+public class RepositoryQueryEvent extends Event {
+
+    @Label("Repository")
+    public String repository;
+
+    @Label("Repository Method")
+    public String method;
+
+    @Label("Row Count")
+    public long rowCount;
+
+    @Label("Failed")
+    public boolean failed;
+}
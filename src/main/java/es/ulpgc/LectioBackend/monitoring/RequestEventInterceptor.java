@@ -0,0 +1,47 @@
+package es.ulpgc.LectioBackend.monitoring;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class RequestEventInterceptor implements HandlerInterceptor {
+
+    private static final String EVENT_ATTRIBUTE = RequestEventInterceptor.class.getName() + ".EVENT";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod))
+            return true;
+
+        HttpRequestEvent event = new HttpRequestEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            request.setAttribute(EVENT_ATTRIBUTE, event);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object attribute = request.getAttribute(EVENT_ATTRIBUTE);
+        if (!(attribute instanceof HttpRequestEvent))
+            return;
+
+        HttpRequestEvent event = (HttpRequestEvent) attribute;
+        request.removeAttribute(EVENT_ATTRIBUTE);
+        event.end();
+        if (event.shouldCommit()) {
+            HandlerMethod handlerMethod = (HandlerMethod) handler;
+            event.controller = handlerMethod.getBeanType().getSimpleName();
+            event.method = handlerMethod.getMethod().getName();
+            event.httpMethod = request.getMethod();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            event.path = (pattern != null) ? pattern.toString() : request.getRequestURI();
+            event.status = response.getStatus();
+            event.commit();
+        }
+    }
+}
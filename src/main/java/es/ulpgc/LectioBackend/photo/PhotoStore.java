@@ -0,0 +1,228 @@
+package es.ulpgc.LectioBackend.photo;
+
+import es.ulpgc.LectioBackend.error.BadRequestException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * User photos as files named by the SHA-256 of their content, so the same image is kept once and a
+ * file never changes: users.photo only holds the reference, hash.extension, and the files can be
+ * cached forever. Every photo gets a thumbnail next to it when it is stored, so serving one never
+ * decodes an image. Files are written to a temporary file first and moved into place, a reader
+ * never sees half of one.
+ */
+@Service
+public class PhotoStore {
+
+    public static final String THUMBNAIL = "thumb";
+
+    private static final Pattern REFERENCE = Pattern.compile("[0-9a-f]{64}\\.(jpg|png|gif)");
+    private static final Map<String, String> EXTENSIONS = Map.of("jpeg", "jpg", "png", "png", "gif", "gif");
+    private static final Map<String, MediaType> MEDIA_TYPES = Map.of(
+            "jpg", MediaType.IMAGE_JPEG, "png", MediaType.IMAGE_PNG, "gif", MediaType.IMAGE_GIF);
+    private static final String DATA_URL = "data:";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxPixels;
+    private final int thumbnailSize;
+
+    public PhotoStore(@Value("${lectio.photos.directory:data/photos}") String directory,
+                      @Value("${lectio.photos.max-bytes:5242880}") long maxBytes,
+                      @Value("${lectio.photos.max-pixels:40000000}") long maxPixels,
+                      @Value("${lectio.photos.thumbnail-size:128}") int thumbnailSize) {
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.maxBytes = maxBytes;
+        this.maxPixels = maxPixels;
+        this.thumbnailSize = thumbnailSize;
+    }
+
+    public static boolean isReference(String reference) {
+        return reference != null && REFERENCE.matcher(reference).matches();
+    }
+
+    public static MediaType mediaType(String reference) {
+        return MEDIA_TYPES.get(reference.substring(reference.lastIndexOf('.') + 1));
+    }
+
+    /**
+     * Reads the image to the end, at most maxBytes.
+     *
+     * @return the reference of the photo
+     * @throws BadRequestException when it is too big or isn't a JPEG, PNG or GIF image
+     */
+    public String store(InputStream in) throws IOException {
+        Path temporary = temporaryFile();
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream digested = new DigestInputStream(in, digest);
+                 OutputStream out = Files.newOutputStream(temporary)) {
+                byte[] buffer = new byte[8192];
+                long size = 0;
+                int read;
+                while ((read = digested.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes)
+                        throw new BadRequestException("The photo can't be bigger than " + maxBytes + " bytes");
+                    out.write(buffer, 0, read);
+                }
+            }
+            return place(temporary, hex(digest.digest()));
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * A photo sent inline as a data URL (data:image/png;base64,...) is stored and replaced by its
+     * reference, anything else is kept as it is.
+     */
+    public String toReference(String photo) throws IOException {
+        if (photo == null || !photo.startsWith(DATA_URL))
+            return photo;
+        int comma = photo.indexOf(',');
+        if (comma < 0 || !photo.substring(0, comma).endsWith(";base64"))
+            throw new BadRequestException("The photo must be a base64 data URL");
+        byte[] image;
+        try {
+            image = Base64.getMimeDecoder().decode(photo.substring(comma + 1));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("The photo must be a base64 data URL");
+        }
+        return store(new ByteArrayInputStream(image));
+    }
+
+    /**
+     * @param size null for the photo, THUMBNAIL for its thumbnail
+     * @return null when there is no such photo
+     */
+    public Path find(String reference, String size) {
+        if (!isReference(reference))
+            return null;
+        Path file = file(reference, THUMBNAIL.equals(size));
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private String place(Path temporary, String hash) throws IOException {
+        BufferedImage image;
+        String extension;
+        try (ImageInputStream in = ImageIO.createImageInputStream(temporary.toFile())) {
+            Iterator<ImageReader> readers = (in == null) ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext())
+                throw new BadRequestException("The photo must be a JPEG, PNG or GIF image");
+            ImageReader reader = readers.next();
+            extension = EXTENSIONS.get(reader.getFormatName().toLowerCase(Locale.ROOT));
+            if (extension == null)
+                throw new BadRequestException("The photo must be a JPEG, PNG or GIF image");
+            try {
+                reader.setInput(in, true, true);
+                // The size is in the header, a huge image is turned down before it is decoded
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels)
+                    throw new BadRequestException("The photo can't have more than " + maxPixels + " pixels");
+                image = reader.read(0);
+            } catch (IOException e) {
+                throw new BadRequestException("The photo must be a JPEG, PNG or GIF image");
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        String reference = hash + "." + extension;
+        Path file = file(reference, false);
+        if (Files.exists(file))
+            return reference;
+
+        Files.createDirectories(file.getParent());
+        // The thumbnail goes first: a photo in place always has one
+        Path thumbnail = temporaryFile();
+        try {
+            if (!ImageIO.write(thumbnail(image, extension), extension, thumbnail.toFile()))
+                throw new IOException("No writer for " + extension + " thumbnails");
+            move(thumbnail, file(reference, true));
+        } finally {
+            Files.deleteIfExists(thumbnail);
+        }
+        move(temporary, file);
+        return reference;
+    }
+
+    private BufferedImage thumbnail(BufferedImage image, String extension) {
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        // JPEG has no alpha channel
+        boolean alpha = image.getColorModel().hasAlpha() && !"jpg".equals(extension);
+        BufferedImage thumbnail = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    private Path file(String reference, boolean thumbnail) {
+        String name = thumbnail ? reference.replace(".", "." + THUMBNAIL + ".") : reference;
+        return directory.resolve(reference.substring(0, 2)).resolve(name);
+    }
+
+    private Path temporaryFile() throws IOException {
+        Path temporary = directory.resolve("tmp");
+        Files.createDirectories(temporary);
+        return Files.createTempFile(temporary, "photo", null);
+    }
+
+    /**
+     * Another upload of the same image may get there first, it is the same file.
+     */
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hex.toString();
+    }
+}
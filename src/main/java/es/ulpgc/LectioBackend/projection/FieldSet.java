@@ -0,0 +1,80 @@
+package es.ulpgc.LectioBackend.projection;
+
+import es.ulpgc.LectioBackend.error.BadRequestException;
+
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields a client asked for with fields=a,b,c, each with the column it is read from. Queries select
+ * only those columns and every row becomes a map with the same names the full entity is serialized with,
+ * so Gson and Jackson write it exactly like the entity minus the fields left out.
+ */
+public final class FieldSet {
+
+    private final Map<String, String> columns;
+
+    private FieldSet(Map<String, String> columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * @param available field name to column, in the order fields are written
+     * @return null when fields is empty, meaning every field
+     * @throws BadRequestException when a field isn't available
+     */
+    public static FieldSet parse(String fields, Map<String, String> available) {
+        if (fields == null || fields.isBlank())
+            return null;
+        List<String> requested = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty())
+                continue;
+            if (!available.containsKey(name))
+                throw new BadRequestException("Unknown field " + name);
+            requested.add(name);
+        }
+        Map<String, String> columns = new LinkedHashMap<>();
+        available.forEach((name, column) -> {
+            if (requested.contains(name))
+                columns.put(name, column);
+        });
+        return columns.isEmpty() ? null : new FieldSet(columns);
+    }
+
+    /**
+     * Ordered field names, the same for any spelling of the same fields.
+     */
+    public String key() {
+        return String.join(",", columns.keySet());
+    }
+
+    public String select() {
+        return String.join(", ", columns.values());
+    }
+
+    /**
+     * Runs a native query selecting select() and maps its rows.
+     */
+    public List<Map<String, Object>> read(Query query) {
+        List<?> rows = query.getResultList();
+        if (rows.isEmpty())
+            return Collections.emptyList();
+        List<String> names = new ArrayList<>(columns.keySet());
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            // A single column comes back as the value itself
+            Object[] values = (names.size() == 1) ? new Object[]{row} : (Object[]) row;
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++)
+                map.put(names.get(i), values[i]);
+            result.add(map);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,352 @@
+package es.ulpgc.LectioBackend.purge;
+
+import es.ulpgc.LectioBackend.clubs.ClubDeadlines;
+import es.ulpgc.LectioBackend.clubs.ClubDirectory;
+import es.ulpgc.LectioBackend.clubs.ClubEvent;
+import es.ulpgc.LectioBackend.clubs.ClubEventBus;
+import es.ulpgc.LectioBackend.clubs.ClubRanking;
+import es.ulpgc.LectioBackend.library.LibraryIndex;
+import es.ulpgc.LectioBackend.model.Club;
+import es.ulpgc.LectioBackend.recommendation.RecommendationEngine;
+import es.ulpgc.LectioBackend.repository.ClubRepository;
+import es.ulpgc.LectioBackend.search.SuggestIndex;
+import es.ulpgc.LectioBackend.sync.ChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes users and clubs in two steps. The request only marks the row (deleted_at), which hides it
+ * from the entities and the indexes at once; the rows depending on it are then deleted here, on a
+ * background thread, batchSize rows per statement with a pause between batches, so a heavy account
+ * never keeps many rows of userlists, booklists or club_subscribers locked at once. The marked rows
+ * are the queue: a purge interrupted by a restart starts again with the next sweep, and every batch
+ * skips what is already gone, so instances purging at the same time don't get in each other's way.
+ */
+@Service
+public class PurgeWorker implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PurgeWorker.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ClubRepository clubRepository;
+
+    @Autowired
+    private ClubRanking clubRanking;
+
+    @Autowired
+    private ClubDirectory clubDirectory;
+
+    @Autowired
+    private ClubDeadlines clubDeadlines;
+
+    @Autowired
+    private ClubEventBus clubEventBus;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private LibraryIndex libraryIndex;
+
+    @Autowired
+    private SuggestIndex suggestIndex;
+
+    @Autowired
+    private RecommendationEngine recommendationEngine;
+
+    @Value("${lectio.purge.batch-size:500}")
+    private int batchSize;
+
+    @Value("${lectio.purge.batch-pause-ms:50}")
+    private long batchPause;
+
+    @Value("${lectio.purge.sweep-interval-ms:60000}")
+    private long sweepInterval;
+
+    private final Semaphore wakeUp = new Semaphore(0);
+
+    private volatile boolean stopping;
+    private volatile String purging;
+
+    private final AtomicLong usersPurged = new AtomicLong();
+    private final AtomicLong clubsPurged = new AtomicLong();
+    private final AtomicLong rowsPurged = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Thread thread = new Thread(this::run, "purge");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+        wakeUp.release();
+    }
+
+    /**
+     * Marks the user deleted, along with the clubs they created, and leaves the rest to the worker.
+     *
+     * @return false when there is no such user or it was already deleted
+     */
+    public boolean deleteUser(long user_id) {
+        if (jdbcTemplate.update("UPDATE users SET deleted_at = CURRENT_TIMESTAMP WHERE user_id = ? AND deleted_at IS NULL",
+                user_id) == 0)
+            return false;
+        libraryIndex.invalidate(user_id);
+        for (Club club : clubRepository.findClubsCreatedBy(user_id))
+            markDeleted(club);
+        wakeUp.release();
+        return true;
+    }
+
+    /**
+     * @return false when the club was already deleted
+     */
+    public boolean deleteClub(Club club) {
+        if (!markDeleted(club))
+            return false;
+        wakeUp.release();
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingUsers", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE deleted_at IS NOT NULL", Long.class));
+        stats.put("pendingClubs", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM club WHERE deleted_at IS NOT NULL", Long.class));
+        stats.put("purging", purging);
+        stats.put("usersPurged", usersPurged.get());
+        stats.put("clubsPurged", clubsPurged.get());
+        stats.put("rowsPurged", rowsPurged.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    private boolean markDeleted(Club club) {
+        if (jdbcTemplate.update("UPDATE club SET deleted_at = CURRENT_TIMESTAMP WHERE id = ? AND deleted_at IS NULL",
+                club.getId()) == 0)
+            return false;
+        clubRanking.removeClub(club.getId());
+        clubDirectory.removeClub(club.getId());
+        clubDeadlines.cancel(club.getId());
+        clubEventBus.publish(ClubEvent.of(ClubEvent.DELETED, club, null));
+        return true;
+    }
+
+    private void run() {
+        while (!stopping) {
+            try {
+                // Picks up what was marked by other instances or before a restart too
+                wakeUp.tryAcquire(sweepInterval, TimeUnit.MILLISECONDS);
+                wakeUp.drainPermits();
+                purgeAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                LOGGER.warn("Purge of deleted users and clubs failed, it will be retried on the next sweep", e);
+            }
+        }
+    }
+
+    private void purgeAll() {
+        for (long club_id : jdbcTemplate.queryForList("SELECT id FROM club WHERE deleted_at IS NOT NULL ORDER BY id", Long.class)) {
+            if (stopping || !purgeClub(club_id))
+                return;
+        }
+        for (long user_id : jdbcTemplate.queryForList("SELECT user_id FROM users WHERE deleted_at IS NOT NULL ORDER BY user_id", Long.class)) {
+            if (stopping || !purgeUser(user_id))
+                return;
+        }
+    }
+
+    /**
+     * @return false when the worker is stopping
+     */
+    private boolean purgeClub(long club_id) {
+        purging = "club " + club_id;
+        try {
+            while (true) {
+                List<Long> subscribers = jdbcTemplate.queryForList(
+                        "SELECT user_id FROM club_subscribers WHERE club_id = ? LIMIT ?", Long.class, club_id, batchSize);
+                if (subscribers.isEmpty())
+                    break;
+                List<Object[]> keys = new ArrayList<>(subscribers.size());
+                for (long user_id : subscribers)
+                    keys.add(new Object[]{club_id, user_id});
+                // With their changes, or the subscribers syncing with since would keep the club
+                transactionTemplate.executeWithoutResult(status -> {
+                    int[] deleted = jdbcTemplate.batchUpdate("DELETE FROM club_subscribers WHERE club_id = ? AND user_id = ?", keys);
+                    for (int i = 0; i < deleted.length; i++) {
+                        if (deleted[i] != 0)
+                            changeLog.subscriptionChanged(subscribers.get(i), club_id, true);
+                    }
+                });
+                if (!pause(subscribers.size()))
+                    return false;
+            }
+            if (!deleteAll("DELETE FROM club_punctuation WHERE club_id = ? LIMIT ?", club_id))
+                return false;
+
+            if (jdbcTemplate.update("DELETE FROM club WHERE id = ? AND deleted_at IS NOT NULL", club_id) != 0)
+                clubsPurged.incrementAndGet();
+            return true;
+        } finally {
+            purging = null;
+        }
+    }
+
+    /**
+     * The clubs the user created are purged first, they keep the user's row from being deleted.
+     *
+     * @return false when the worker is stopping
+     */
+    private boolean purgeUser(long user_id) {
+        purging = "user " + user_id;
+        try {
+            while (true) {
+                List<Object[]> entries = jdbcTemplate.query(
+                        "SELECT booklists.list_id, booklists.book_id FROM booklists " +
+                                "JOIN userlists ON userlists.list_id = booklists.list_id WHERE userlists.user_id = ? LIMIT ?",
+                        (rs, row) -> new Object[]{rs.getLong(1), rs.getLong(2)}, user_id, batchSize);
+                if (entries.isEmpty())
+                    break;
+                int[] deleted = jdbcTemplate.batchUpdate("DELETE FROM booklists WHERE list_id = ? AND book_id = ?", entries);
+                for (int i = 0; i < deleted.length; i++) {
+                    if (deleted[i] == 0)
+                        continue;
+                    long book_id = (Long) entries.get(i)[1];
+                    suggestIndex.recordListChange(book_id, -1);
+                    recommendationEngine.onBookRemoved(user_id, book_id);
+                }
+                if (!pause(deleted.length))
+                    return false;
+            }
+            if (!deleteAll("DELETE FROM userlists WHERE user_id = ? LIMIT ?", user_id))
+                return false;
+
+            while (true) {
+                List<Long> clubs = jdbcTemplate.queryForList(
+                        "SELECT club_id FROM club_subscribers WHERE user_id = ? ORDER BY club_id LIMIT ?", Long.class, user_id, batchSize);
+                if (clubs.isEmpty())
+                    break;
+                unsubscribe(user_id, clubs);
+                if (!pause(clubs.size()))
+                    return false;
+            }
+
+            while (true) {
+                List<long[]> punctuations = jdbcTemplate.query(
+                        "SELECT id, club_id, punctuation FROM club_punctuation WHERE user_id = ? LIMIT ?",
+                        (rs, row) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)}, user_id, batchSize);
+                if (punctuations.isEmpty())
+                    break;
+                List<Object[]> ids = new ArrayList<>(punctuations.size());
+                for (long[] punctuation : punctuations)
+                    ids.add(new Object[]{punctuation[0]});
+                int[] deleted = jdbcTemplate.batchUpdate("DELETE FROM club_punctuation WHERE id = ?", ids);
+                for (int i = 0; i < deleted.length; i++) {
+                    if (deleted[i] != 0)
+                        clubRanking.removePunctuation(punctuations.get(i)[1], punctuations.get(i)[2]);
+                }
+                if (!pause(deleted.length))
+                    return false;
+            }
+            if (!deleteAll("DELETE FROM reviews WHERE user_id = ? LIMIT ?", user_id))
+                return false;
+
+            for (long club_id : jdbcTemplate.queryForList("SELECT id FROM club WHERE creator = ?", Long.class, user_id)) {
+                // Created after the user was marked, the club was never marked itself
+                jdbcTemplate.update("UPDATE club SET deleted_at = CURRENT_TIMESTAMP WHERE id = ? AND deleted_at IS NULL", club_id);
+                clubRanking.removeClub(club_id);
+                clubDirectory.removeClub(club_id);
+                clubDeadlines.cancel(club_id);
+                if (!purgeClub(club_id))
+                    return false;
+            }
+            if (!deleteAll("DELETE FROM user_changes WHERE user_id = ? LIMIT ?", user_id))
+                return false;
+
+            if (jdbcTemplate.update("DELETE FROM users WHERE user_id = ? AND deleted_at IS NOT NULL", user_id) != 0)
+                usersPurged.incrementAndGet();
+            libraryIndex.invalidate(user_id);
+            return true;
+        } finally {
+            purging = null;
+        }
+    }
+
+    /**
+     * Every subscription is deleted together with the decrement of its club's count, in one short
+     * transaction per batch. Clubs are locked in id order, like unsubscribing does one at a time.
+     */
+    private void unsubscribe(long user_id, List<Long> club_ids) {
+        List<Long> unsubscribed = transactionTemplate.execute(status -> {
+            List<Long> _unsubscribed = new ArrayList<>();
+            for (long club_id : club_ids) {
+                if (jdbcTemplate.update("DELETE FROM club_subscribers WHERE club_id = ? AND user_id = ?", club_id, user_id) == 0)
+                    continue;
+                jdbcTemplate.update("UPDATE club SET num_subscribers = num_subscribers - 1 WHERE id = ? AND num_subscribers > 0", club_id);
+                _unsubscribed.add(club_id);
+            }
+            return _unsubscribed;
+        });
+
+        for (Club club : clubRepository.findAllById(unsubscribed)) {
+            clubRanking.setSubscribers(club.getId(), club.getNum_subscribers());
+            clubEventBus.publish(ClubEvent.of(ClubEvent.UNSUBSCRIBED, club, user_id));
+        }
+    }
+
+    /**
+     * Runs a DELETE ... WHERE key = ? LIMIT ? until it deletes nothing.
+     *
+     * @return false when the worker is stopping
+     */
+    private boolean deleteAll(String delete, long key) {
+        while (true) {
+            int deleted = jdbcTemplate.update(delete, key, batchSize);
+            if (deleted == 0)
+                return true;
+            if (!pause(deleted))
+                return false;
+        }
+    }
+
+    private boolean pause(int rows) {
+        rowsPurged.addAndGet(rows);
+        try {
+            if (!stopping)
+                Thread.sleep(batchPause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopping = true;
+        }
+        return !stopping;
+    }
+}
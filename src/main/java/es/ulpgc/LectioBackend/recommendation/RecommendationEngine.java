@@ -0,0 +1,283 @@
+package es.ulpgc.LectioBackend.recommendation;
+
+import es.ulpgc.LectioBackend.repository.BookListRepository;
+import es.ulpgc.LectioBackend.util.LongIntHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * "Readers also read" recommendations from an item-item co-occurrence matrix: two books co-occur
+ * once for every user that keeps both of them in any of their lists. Scores are cosine normalized
+ * so very popular books do not dominate every row, and the top TOP_K of each row is kept ready.
+ */
+@Service
+public class RecommendationEngine {
+
+    public static final int TOP_K = 50;
+
+    // Users with bigger libraries only count their first books for pairs, bounding the quadratic work
+    private static final int MAX_LIBRARY_SIZE = 500;
+    private static final int USERS_PER_TASK = 256;
+
+    @Autowired
+    private BookListRepository bookListRepository;
+
+    private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+    private final Map<Long, Library> libraries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        Map<Long, LongIntHashMap> userBooks = new HashMap<>();
+        for (Object[] pair : bookListRepository.findUserBookPairs()) {
+            long user_id = ((Number) pair[0]).longValue();
+            long book_id = ((Number) pair[1]).longValue();
+            userBooks.computeIfAbsent(user_id, id -> new LongIntHashMap()).addTo(book_id, 1);
+        }
+
+        long[][] books = new long[userBooks.size()][];
+        int i = 0;
+        for (Map.Entry<Long, LongIntHashMap> entry : userBooks.entrySet()) {
+            books[i] = entry.getValue().keys();
+            // The same books CooccurrenceTask counts in pairs
+            Library library = new Library(entry.getValue());
+            for (int j = 0; j < books[i].length && j < MAX_LIBRARY_SIZE; j++)
+                library.paired.addTo(books[i][j], 1);
+            libraries.put(entry.getKey(), library);
+            i++;
+        }
+
+        rows.putAll(ForkJoinPool.commonPool().invoke(new CooccurrenceTask(books, 0, books.length)));
+        rows.values().parallelStream().forEach(Row::top);
+    }
+
+    public void onBookAdded(long user_id, long book_id) {
+        Library library = libraries.computeIfAbsent(user_id, id -> new Library(new LongIntHashMap()));
+        synchronized (library) {
+            if (library.books.addTo(book_id, 1) != 1)
+                return;
+            addReaders(book_id, 1);
+            if (library.paired.size() < MAX_LIBRARY_SIZE)
+                pair(book_id, library);
+        }
+    }
+
+    public void onBookRemoved(long user_id, long book_id) {
+        Library library = libraries.get(user_id);
+        if (library == null)
+            return;
+        synchronized (library) {
+            if (!library.books.containsKey(book_id) || library.books.addTo(book_id, -1) != 0)
+                return;
+            addReaders(book_id, -1);
+            if (library.paired.remove(book_id) == 0)
+                return;
+            addPairs(book_id, library.paired.keys(), -1);
+            // The place it leaves goes to a book of the library that wasn't counted in pairs yet
+            for (long other : library.books.keys()) {
+                if (!library.paired.containsKey(other)) {
+                    pair(other, library);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return books most often kept together with book_id, best first
+     */
+    public List<ScoredBook> related(long book_id, int limit) {
+        Row row = rows.get(book_id);
+        if (row == null)
+            return new ArrayList<>();
+        List<ScoredBook> top = row.top();
+        return new ArrayList<>(top.subList(0, Math.min(limit, top.size())));
+    }
+
+    /**
+     * Sums the related scores of every book in the user's lists, leaving out the books already there.
+     */
+    public List<ScoredBook> recommendations(long user_id, int limit) {
+        Library library = libraries.get(user_id);
+        if (library == null)
+            return new ArrayList<>();
+
+        LongIntHashMap owned;
+        synchronized (library) {
+            owned = new LongIntHashMap(library.books.size());
+            owned.addAll(library.books);
+        }
+
+        Map<Long, Double> scores = new HashMap<>();
+        long[] books = owned.keys();
+        for (int i = 0; i < books.length && i < MAX_LIBRARY_SIZE; i++) {
+            for (ScoredBook related : related(books[i], TOP_K)) {
+                if (!owned.containsKey(related.getBook_id()))
+                    scores.merge(related.getBook_id(), related.getScore(), Double::sum);
+            }
+        }
+
+        PriorityQueue<ScoredBook> heap = new PriorityQueue<>(Comparator.comparingDouble(ScoredBook::getScore));
+        scores.forEach((id, score) -> {
+            heap.add(new ScoredBook(id, score));
+            if (heap.size() > limit)
+                heap.poll();
+        });
+        List<ScoredBook> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(ScoredBook::getScore).reversed());
+        return result;
+    }
+
+    /**
+     * Counts book_id in pairs with the books of the library already counted, and marks it counted.
+     */
+    private void pair(long book_id, Library library) {
+        addPairs(book_id, library.paired.keys(), 1);
+        library.paired.addTo(book_id, 1);
+    }
+
+    private void addReaders(long book_id, int delta) {
+        Row row = rows.computeIfAbsent(book_id, id -> new Row());
+        synchronized (row) {
+            row.readers += delta;
+            row.dirty = true;
+        }
+    }
+
+    private void addPairs(long book_id, long[] others, int delta) {
+        Row row = rows.computeIfAbsent(book_id, id -> new Row());
+        synchronized (row) {
+            for (long other : others) {
+                if (other != book_id)
+                    row.counts.addTo(other, delta);
+            }
+            row.dirty = true;
+        }
+        for (long other : others) {
+            if (other == book_id)
+                continue;
+            Row otherRow = rows.computeIfAbsent(other, id -> new Row());
+            synchronized (otherRow) {
+                otherRow.counts.addTo(book_id, delta);
+                otherRow.dirty = true;
+            }
+        }
+    }
+
+    private int readers(long book_id) {
+        Row row = rows.get(book_id);
+        return (row == null) ? 0 : row.readers;
+    }
+
+    /**
+     * A user's books, with how many of their lists have each, and the ones counted in pairs: at most
+     * MAX_LIBRARY_SIZE of them, so a book that leaves only takes back the pairs it was counted in.
+     */
+    private static class Library {
+        final LongIntHashMap books;
+        final LongIntHashMap paired = new LongIntHashMap();
+
+        Library(LongIntHashMap books) {
+            this.books = books;
+        }
+    }
+
+    private class Row {
+        final LongIntHashMap counts = new LongIntHashMap();
+        volatile int readers;
+        boolean dirty = true;
+        List<ScoredBook> top = new ArrayList<>();
+
+        synchronized List<ScoredBook> top() {
+            if (!dirty)
+                return top;
+
+            PriorityQueue<ScoredBook> heap = new PriorityQueue<>(TOP_K + 1, Comparator.comparingDouble(ScoredBook::getScore));
+            int own = Math.max(1, readers);
+            counts.forEach((other, together) -> {
+                double score = together / Math.sqrt((double) own * Math.max(1, readers(other)));
+                heap.add(new ScoredBook(other, score));
+                if (heap.size() > TOP_K)
+                    heap.poll();
+            });
+            List<ScoredBook> ranked = new ArrayList<>(heap);
+            ranked.sort(Comparator.comparingDouble(ScoredBook::getScore).reversed());
+            top = ranked;
+            dirty = false;
+            return top;
+        }
+    }
+
+    /**
+     * Builds the co-occurrence rows of a slice of the users' libraries, splitting the slice in
+     * halves until it is small enough and merging the partial rows on the way back.
+     */
+    private class CooccurrenceTask extends RecursiveTask<Map<Long, Row>> {
+
+        private final long[][] libraries;
+        private final int from;
+        private final int to;
+
+        CooccurrenceTask(long[][] libraries, int from, int to) {
+            this.libraries = libraries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Long, Row> compute() {
+            if (to - from <= USERS_PER_TASK)
+                return computeDirectly();
+
+            int middle = (from + to) >>> 1;
+            CooccurrenceTask left = new CooccurrenceTask(libraries, from, middle);
+            left.fork();
+            Map<Long, Row> right = new CooccurrenceTask(libraries, middle, to).compute();
+            return merge(left.join(), right);
+        }
+
+        private Map<Long, Row> computeDirectly() {
+            Map<Long, Row> partial = new HashMap<>();
+            for (int u = from; u < to; u++) {
+                long[] books = libraries[u];
+                int size = Math.min(books.length, MAX_LIBRARY_SIZE);
+                for (int i = 0; i < books.length; i++) {
+                    Row row = partial.computeIfAbsent(books[i], id -> new Row());
+                    row.readers++;
+                    if (i >= size)
+                        continue;
+                    for (int j = 0; j < size; j++) {
+                        if (i != j)
+                            row.counts.addTo(books[j], 1);
+                    }
+                }
+            }
+            return partial;
+        }
+
+        private Map<Long, Row> merge(Map<Long, Row> a, Map<Long, Row> b) {
+            Map<Long, Row> big = (a.size() >= b.size()) ? a : b;
+            Map<Long, Row> small = (big == a) ? b : a;
+            small.forEach((book_id, row) -> {
+                Row target = big.get(book_id);
+                if (target == null) {
+                    big.put(book_id, row);
+                } else {
+                    target.readers += row.readers;
+                    target.counts.addAll(row.counts);
+                }
+            });
+            return big;
+        }
+    }
+}
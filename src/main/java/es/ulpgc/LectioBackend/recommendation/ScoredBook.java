@@ -0,0 +1,20 @@
+package es.ulpgc.LectioBackend.recommendation;
+
+public class ScoredBook {
+
+    private final long book_id;
+    private final double score;
+
+    public ScoredBook(long book_id, double score) {
+        this.book_id = book_id;
+        this.score = score;
+    }
+
+    public long getBook_id() {
+        return book_id;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
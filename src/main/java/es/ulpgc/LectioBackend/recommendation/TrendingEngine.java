@@ -0,0 +1,287 @@
+package es.ulpgc.LectioBackend.recommendation;
+
+import es.ulpgc.LectioBackend.util.LongDoubleHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trending books from exponentially decayed activity counters. Uses forward decay: an event at time t
+ * adds weight * e^(lambda * (t - landmark)), so stored values never need to be decayed one by one and
+ * the current score of every book is its stored value times the same e^(-lambda * (now - landmark)).
+ * Relative order never changes with time, which lets the best TOP_K books be kept in an ordered set
+ * updated on each event. When the growing factor gets large every value is rebased to a new landmark.
+ */
+@Service
+public class TrendingEngine {
+
+    public static final int TOP_K = 100;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrendingEngine.class);
+
+    private static final int STRIPES = 64;
+    private static final double REBASE_EXPONENT = 40;
+    private static final double PRUNE_SCORE = 0.01;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    @Value("${lectio.trending.half-life-hours:72}")
+    private double halfLifeHours;
+
+    @Value("${lectio.trending.snapshot-file:data/trending.snapshot}")
+    private String snapshotFile;
+
+    @Value("${lectio.trending.weight.list:1.0}")
+    private double listWeight;
+
+    @Value("${lectio.trending.weight.progress:0.25}")
+    private double progressWeight;
+
+    @Value("${lectio.trending.weight.review:2.0}")
+    private double reviewWeight;
+
+    // Events hold the read lock, rebasing the landmark holds the write lock
+    private final ReadWriteLock rebaseLock = new ReentrantReadWriteLock();
+    private final LongDoubleHashMap[] stripes = new LongDoubleHashMap[STRIPES];
+
+    // Guarded by top
+    private final TreeSet<Entry> top = new TreeSet<>(Comparator.comparingDouble((Entry entry) -> entry.value)
+            .thenComparingLong(entry -> entry.book_id));
+    private final Map<Long, Entry> ranked = new HashMap<>();
+
+    private double lambda;
+    private volatile long landmark;
+
+    public TrendingEngine() {
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new LongDoubleHashMap();
+    }
+
+    @PostConstruct
+    public void load() {
+        lambda = Math.log(2) / (halfLifeHours * 3_600_000d);
+        landmark = System.currentTimeMillis();
+
+        Path path = Paths.get(snapshotFile);
+        if (!Files.exists(path))
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SNAPSHOT_VERSION)
+                return;
+            landmark = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long book_id = in.readLong();
+                double value = in.readDouble();
+                stripe(book_id).put(book_id, value);
+                offer(book_id, value);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't read trending snapshot {}, starting empty", path, e);
+            clear();
+        }
+    }
+
+    public void onBookAdded(long book_id) {
+        record(book_id, listWeight);
+    }
+
+    public void onProgress(long book_id) {
+        record(book_id, progressWeight);
+    }
+
+    public void onReview(long book_id) {
+        record(book_id, reviewWeight);
+    }
+
+    /**
+     * @return the hottest books right now, best first
+     */
+    public List<ScoredBook> trending(int limit) {
+        double decay = Math.exp(-lambda * (System.currentTimeMillis() - landmark));
+        List<ScoredBook> result = new ArrayList<>(Math.min(limit, TOP_K));
+        synchronized (top) {
+            Iterator<Entry> entries = top.descendingIterator();
+            while (entries.hasNext() && result.size() < limit) {
+                Entry entry = entries.next();
+                result.add(new ScoredBook(entry.book_id, entry.value * decay));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the current scores to the snapshot file, dropping books whose score has faded away.
+     */
+    @Scheduled(fixedDelayString = "${lectio.trending.snapshot-interval-ms:300000}")
+    @PreDestroy
+    public void snapshot() {
+        rebaseIfNeeded(System.currentTimeMillis());
+
+        long savedAt;
+        LongDoubleHashMap scores = new LongDoubleHashMap();
+        rebaseLock.readLock().lock();
+        try {
+            savedAt = System.currentTimeMillis();
+            double decay = Math.exp(-lambda * (savedAt - landmark));
+            for (LongDoubleHashMap stripe : stripes) {
+                synchronized (stripe) {
+                    LongDoubleHashMap faded = new LongDoubleHashMap();
+                    stripe.forEach((book_id, value) -> {
+                        if (value * decay >= PRUNE_SCORE)
+                            scores.put(book_id, value * decay);
+                        else
+                            faded.put(book_id, value);
+                    });
+                    faded.forEach((book_id, value) -> {
+                        if (!isRanked(book_id))
+                            stripe.remove(book_id);
+                        else
+                            scores.put(book_id, value * decay);
+                    });
+                }
+            }
+        } finally {
+            rebaseLock.readLock().unlock();
+        }
+
+        Path path = Paths.get(snapshotFile).toAbsolutePath();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(savedAt);
+                out.writeInt(scores.size());
+                scores.forEach((book_id, score) -> {
+                    try {
+                        out.writeLong(book_id);
+                        out.writeDouble(score);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.warn("Couldn't write trending snapshot {}", path, e);
+        }
+    }
+
+    private void record(long book_id, double weight) {
+        long now = System.currentTimeMillis();
+        rebaseLock.readLock().lock();
+        try {
+            double value = weight * Math.exp(lambda * (now - landmark));
+            LongDoubleHashMap stripe = stripe(book_id);
+            synchronized (stripe) {
+                offer(book_id, stripe.addTo(book_id, value));
+            }
+        } finally {
+            rebaseLock.readLock().unlock();
+        }
+        rebaseIfNeeded(now);
+    }
+
+    /**
+     * Values only grow, so a book outside the top can only get in through its own update.
+     */
+    private void offer(long book_id, double value) {
+        synchronized (top) {
+            Entry previous = ranked.get(book_id);
+            if (previous != null) {
+                top.remove(previous);
+            } else if (top.size() >= TOP_K && top.first().value >= value) {
+                return;
+            }
+            Entry entry = new Entry(book_id, value);
+            top.add(entry);
+            ranked.put(book_id, entry);
+            if (top.size() > TOP_K)
+                ranked.remove(top.pollFirst().book_id);
+        }
+    }
+
+    private boolean isRanked(long book_id) {
+        synchronized (top) {
+            return ranked.containsKey(book_id);
+        }
+    }
+
+    private void rebaseIfNeeded(long now) {
+        if (lambda * (now - landmark) < REBASE_EXPONENT)
+            return;
+        rebaseLock.writeLock().lock();
+        try {
+            if (lambda * (now - landmark) < REBASE_EXPONENT)
+                return;
+            double factor = Math.exp(-lambda * (now - landmark));
+            for (LongDoubleHashMap stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.scale(factor);
+                }
+            }
+            synchronized (top) {
+                List<Entry> entries = new ArrayList<>(top);
+                top.clear();
+                ranked.clear();
+                for (Entry entry : entries) {
+                    Entry rebased = new Entry(entry.book_id, entry.value * factor);
+                    top.add(rebased);
+                    ranked.put(rebased.book_id, rebased);
+                }
+            }
+            landmark = now;
+        } finally {
+            rebaseLock.writeLock().unlock();
+        }
+    }
+
+    private void clear() {
+        for (LongDoubleHashMap stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        synchronized (top) {
+            top.clear();
+            ranked.clear();
+        }
+    }
+
+    private LongDoubleHashMap stripe(long book_id) {
+        return stripes[(int) ((book_id * 0x9E3779B97F4A7C15L) >>> 58)];
+    }
+
+    private static class Entry {
+        final long book_id;
+        final double value;
+
+        Entry(long book_id, double value) {
+            this.book_id = book_id;
+            this.value = value;
+        }
+    }
+}
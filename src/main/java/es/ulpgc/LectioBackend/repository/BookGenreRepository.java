@@ -0,0 +1,16 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.model.BookGenre;
+import es.ulpgc.LectioBackend.model.BookGenreId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface BookGenreRepository extends JpaRepository<BookGenre, BookGenreId> {
+
+    @Query(value="SELECT book_id, genre_id FROM book_genres", nativeQuery = true)
+    List<Object[]> findAllPairs();
+}
@@ -15,4 +15,14 @@ public interface BookListRepository extends JpaRepository<BookList, BookListId>
     @Query(value="SELECT * FROM booklists WHERE list_id=?1 AND book_id=?2", nativeQuery = true)
     BookList getBookList(long list_id, long book_id);
 
+    @Query(value="SELECT book_id, COUNT(*) FROM booklists GROUP BY book_id", nativeQuery = true)
+    List<Object[]> countListsPerBook();
+
+    @Query(value="SELECT ul.user_id, bl.book_id FROM booklists bl JOIN userlists ul ON ul.list_id = bl.list_id", nativeQuery = true)
+    List<Object[]> findUserBookPairs();
+
+    @Query(value="SELECT bl.list_id, bl.book_id FROM booklists bl JOIN userlists ul ON ul.list_id = bl.list_id " +
+            "WHERE ul.user_id=?1", nativeQuery = true)
+    List<Object[]> findListBookPairs(long user_id);
+
 }
@@ -5,10 +5,11 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
     @Query(value="SELECT * FROM Books LIMIT ?2 OFFSET ?1 ", nativeQuery = true)
     public List<Book> findAll(int offset, int limit);
 
@@ -18,14 +19,32 @@ public interface BookRepository extends JpaRepository<Book, Long> {
 
     @Query(value="SELECT * FROM Books WHERE Books.title LIKE %:title% " +
             "AND Books.author LIKE %:author% " +
-            "AND Books.genres LIKE %:genre% " +
             "AND Books.publisher LIKE %:publisher% " +
             "LIMIT :limit OFFSET :offset", nativeQuery = true)
-    List<Book> findByFilter(String title, String author, String genre, String publisher, int limit, int offset);
+    List<Book> findByFilter(String title, String author, String publisher, int limit, int offset);
 
     @Query(value = "SELECT COUNT(*) FROM Books WHERE Books.title LIKE %:title% " +
             "AND Books.author LIKE %:author% " +
-            "AND Books.genres LIKE %:genre% " +
             "AND Books.publisher LIKE %:publisher%", nativeQuery = true)
-    int countBooksSearched(String title, String author, String genre, String publisher);
+    int countBooksSearched(String title, String author, String publisher);
+
+    @Query(value="SELECT * FROM Books WHERE Books.title LIKE %:title% " +
+            "AND Books.author LIKE %:author% " +
+            "AND Books.publisher LIKE %:publisher% " +
+            "AND Books.id IN (SELECT book_id FROM book_genres WHERE genre_id IN (:genreIds) " +
+                                "GROUP BY book_id HAVING COUNT(*) >= :required) " +
+            "LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Book> findByFilterAndGenres(String title, String author, String publisher, Collection<Long> genreIds,
+                                     int required, int limit, int offset);
+
+    @Query(value = "SELECT COUNT(*) FROM Books WHERE Books.title LIKE %:title% " +
+            "AND Books.author LIKE %:author% " +
+            "AND Books.publisher LIKE %:publisher% " +
+            "AND Books.id IN (SELECT book_id FROM book_genres WHERE genre_id IN (:genreIds) " +
+                                "GROUP BY book_id HAVING COUNT(*) >= :required)", nativeQuery = true)
+    int countBooksSearchedWithGenres(String title, String author, String publisher, Collection<Long> genreIds,
+                                     int required);
+
+    @Query(value = "SELECT * FROM Books WHERE Books.id NOT IN (SELECT book_id FROM book_genres)", nativeQuery = true)
+    List<Book> findBooksWithoutGenres();
 }
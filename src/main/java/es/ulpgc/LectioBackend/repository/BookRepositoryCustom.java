@@ -0,0 +1,55 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.projection.FieldSet;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Searches and projections built at runtime, see BookRepositoryCustomImpl.
+ */
+public interface BookRepositoryCustom {
+
+    /**
+     * Fields of a book that can be asked for with fields=, and their columns.
+     */
+    Map<String, String> FIELDS = fields();
+
+    /**
+     * Books matching every non empty filter by the FULLTEXT indexes, most relevant first.
+     * genreIds may be null, otherwise a book needs at least required of them.
+     */
+    List<Book> findByFulltext(String title, String author, String publisher, Collection<Long> genreIds,
+                              int required, int limit, int offset);
+
+    int countByFulltext(String title, String author, String publisher, Collection<Long> genreIds, int required);
+
+    /**
+     * Like findByFilterAndGenres, or findByFulltext when fulltext is set, reading only the given fields.
+     */
+    List<Map<String, Object>> findFieldsByFilter(FieldSet fields, String title, String author, String publisher,
+                                                 Collection<Long> genreIds, int required, boolean fulltext,
+                                                 int limit, int offset);
+
+    List<Map<String, Object>> findFields(FieldSet fields, int limit, int offset);
+
+    List<Map<String, Object>> findFieldsById(FieldSet fields, Collection<Long> ids);
+
+    private static Map<String, String> fields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("id", "Books.id");
+        fields.put("title", "Books.title");
+        fields.put("author", "Books.author");
+        fields.put("publisher", "Books.publisher");
+        // Rows BookPagesMigration hasn't reached yet are read from the text column, as Book.parsePages does
+        fields.put("pages", "COALESCE(Books.num_pages, CASE WHEN TRIM(Books.pages) REGEXP '^[0-9]{1,9}$' " +
+                "THEN CAST(TRIM(Books.pages) AS DECIMAL(9, 0)) END)");
+        fields.put("isbn", "Books.isbn");
+        fields.put("genres", "Books.genres");
+        fields.put("synopsis", "Books.synopsis");
+        return fields;
+    }
+}
@@ -0,0 +1,129 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.projection.FieldSet;
+import es.ulpgc.LectioBackend.search.FulltextQuery;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MATCH ... AGAINST searches over the FULLTEXT indexes of database/database.sql. Each filter becomes a
+ * boolean mode query where every word is required and may be the prefix of a longer one. Words shorter
+ * than the server's innodb_ft_min_token_size aren't indexed, a filter made only of those falls back to
+ * LIKE. Title matches weigh the most in the relevance, and the title words found in the synopsis add to it.
+ * Also the projections of FieldSet, which select only the columns asked for.
+ */
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+    private static final String TITLE_WEIGHT = "4";
+    private static final String AUTHOR_WEIGHT = "2";
+    private static final String PUBLISHER_WEIGHT = "1";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${lectio.search.fulltext.min-token-size:3}")
+    private int minTokenSize;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Book> findByFulltext(String title, String author, String publisher, Collection<Long> genreIds,
+                                     int required, int limit, int offset) {
+        return search("*", Book.class, title, author, publisher, genreIds, required, true, limit, offset).getResultList();
+    }
+
+    @Override
+    public int countByFulltext(String title, String author, String publisher, Collection<Long> genreIds, int required) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String where = where(title, author, publisher, genreIds, required, true, parameters, new StringBuilder());
+
+        Query query = entityManager.createNativeQuery("SELECT COUNT(*) FROM Books WHERE " + where);
+        parameters.forEach(query::setParameter);
+        return ((Number) query.getSingleResult()).intValue();
+    }
+
+    @Override
+    public List<Map<String, Object>> findFieldsByFilter(FieldSet fields, String title, String author, String publisher,
+                                                        Collection<Long> genreIds, int required, boolean fulltext,
+                                                        int limit, int offset) {
+        return fields.read(search(fields.select(), null, title, author, publisher, genreIds, required, fulltext, limit, offset));
+    }
+
+    @Override
+    public List<Map<String, Object>> findFields(FieldSet fields, int limit, int offset) {
+        return fields.read(entityManager
+                .createNativeQuery("SELECT " + fields.select() + " FROM Books ORDER BY Books.id LIMIT :limit OFFSET :offset")
+                .setParameter("limit", limit)
+                .setParameter("offset", offset));
+    }
+
+    @Override
+    public List<Map<String, Object>> findFieldsById(FieldSet fields, Collection<Long> ids) {
+        if (ids.isEmpty())
+            return Collections.emptyList();
+        return fields.read(entityManager
+                .createNativeQuery("SELECT " + fields.select() + " FROM Books WHERE Books.id IN (:ids) ORDER BY Books.id")
+                .setParameter("ids", ids));
+    }
+
+    private Query search(String select, Class<?> resultClass, String title, String author, String publisher,
+                         Collection<Long> genreIds, int required, boolean fulltext, int limit, int offset) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        StringBuilder relevance = new StringBuilder("0");
+        String where = where(title, author, publisher, genreIds, required, fulltext, parameters, relevance);
+        boolean rankSynopsis = fulltext && parameters.containsKey("title");
+        if (rankSynopsis) {
+            relevance.append(" + MATCH(Books.synopsis) AGAINST (:titleWords)");
+            parameters.put("titleWords", title);
+        }
+
+        String sql = "SELECT " + select + " FROM Books WHERE " + where +
+                " ORDER BY " + (fulltext ? relevance + " DESC, " : "") + "Books.id LIMIT :limit OFFSET :offset";
+        Query query = (resultClass == null) ? entityManager.createNativeQuery(sql)
+                : entityManager.createNativeQuery(sql, resultClass);
+        parameters.put("limit", limit);
+        parameters.put("offset", offset);
+        parameters.forEach(query::setParameter);
+        return query;
+    }
+
+    private String where(String title, String author, String publisher, Collection<Long> genreIds, int required,
+                         boolean fulltext, Map<String, Object> parameters, StringBuilder relevance) {
+        StringBuilder where = new StringBuilder("1 = 1");
+        filter("title", title, TITLE_WEIGHT, fulltext, where, parameters, relevance);
+        filter("author", author, AUTHOR_WEIGHT, fulltext, where, parameters, relevance);
+        filter("publisher", publisher, PUBLISHER_WEIGHT, fulltext, where, parameters, relevance);
+        if (genreIds != null) {
+            where.append(" AND Books.id IN (SELECT book_id FROM book_genres WHERE genre_id IN (:genreIds)" +
+                    " GROUP BY book_id HAVING COUNT(*) >= :required)");
+            parameters.put("genreIds", genreIds);
+            parameters.put("required", required);
+        }
+        return where.toString();
+    }
+
+    private void filter(String column, String value, String weight, boolean fulltext, StringBuilder where,
+                        Map<String, Object> parameters, StringBuilder relevance) {
+        if (value == null || value.isBlank())
+            return;
+        String match = fulltext ? FulltextQuery.booleanQuery(value, minTokenSize) : null;
+        if (match == null) {
+            where.append(" AND Books.").append(column).append(" LIKE :").append(column);
+            // Unescaped on the like backend, as its counts in BookRepository
+            parameters.put(column, "%" + (fulltext ? FulltextQuery.escapeLike(value.trim()) : value) + "%");
+            return;
+        }
+        String against = "MATCH(Books." + column + ") AGAINST (:" + column + " IN BOOLEAN MODE)";
+        where.append(" AND ").append(against);
+        relevance.append(" + ").append(against).append(" * ").append(weight);
+        parameters.put(column, match);
+    }
+}
@@ -5,8 +5,13 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface ClubPunctuationRepository extends JpaRepository<ClubPunctuation, Long> {
     @Query(value="SELECT * FROM club_punctuation WHERE user_id=?1 AND club_id=?2", nativeQuery = true)
     ClubPunctuation getClubPunctuationByUserIdAndClubId(long user_id, long club_id);
+
+    @Query(value="SELECT club_id, punctuation, COUNT(*) FROM club_punctuation GROUP BY club_id, punctuation", nativeQuery = true)
+    List<Object[]> countPunctuationsPerClub();
 }
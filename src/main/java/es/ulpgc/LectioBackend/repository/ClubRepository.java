@@ -2,16 +2,32 @@ package es.ulpgc.LectioBackend.repository;
 
 import es.ulpgc.LectioBackend.model.Club;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @Repository
 public interface ClubRepository extends JpaRepository<Club, Long> {
 
-    @Query(value="SELECT * FROM club WHERE creator=?1", nativeQuery = true)
+    @Query(value="SELECT * FROM club WHERE creator=?1 AND deleted_at IS NULL", nativeQuery = true)
     List<Club> findClubsCreatedBy(long creator);
 
+    @Query(value="SELECT * FROM club WHERE id > ?1 AND deleted_at IS NULL ORDER BY id LIMIT ?2", nativeQuery = true)
+    List<Club> findAfter(long after, int limit);
+
+    @Query(value="SELECT id, read_time FROM club WHERE read_time IS NOT NULL AND book_id IS NOT NULL " +
+            "AND deleted_at IS NULL AND id > ?1 ORDER BY id LIMIT ?2", nativeQuery = true)
+    List<Object[]> findReadTimesAfter(long after, int limit);
+
+    @Transactional
+    @Modifying
+    @Query(value="UPDATE club SET book_id = NULL, read_time = NULL WHERE id IN (:ids) AND read_time <= :now", nativeQuery = true)
+    int clearReadingPeriod(Collection<Long> ids, Date now);
+
 
 }
@@ -0,0 +1,10 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.model.Genre;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface GenreRepository extends JpaRepository<Genre, Long> {
+    Genre findByName(String name);
+}
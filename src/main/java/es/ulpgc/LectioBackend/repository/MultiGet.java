@@ -0,0 +1,81 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.error.BadRequestException;
+import es.ulpgc.LectioBackend.util.Numbers;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a set of entities by id in one go. Entities already in the persistence context (or in the
+ * second-level cache, when one is configured) are taken from there, the rest are read with
+ * WHERE id IN (...) queries of at most chunkSize ids each.
+ */
+@Component
+public class MultiGet {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${lectio.multiget.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${lectio.multiget.max-ids:500}")
+    private int maxIds;
+
+    private BadRequestException tooManyIds;
+
+    @PostConstruct
+    public void init() {
+        tooManyIds = new BadRequestException("At most " + maxIds + " ids at once");
+    }
+
+    /**
+     * @param ids comma separated, repeated ids are read once
+     * @throws BadRequestException when an id isn't a number or there are more than maxIds
+     */
+    public List<Long> parseIds(String ids) {
+        Set<Long> parsed = new LinkedHashSet<>();
+        for (String id : ids.split(",")) {
+            String _id = id.trim();
+            if (_id.isEmpty())
+                continue;
+            if (!Numbers.isLong(_id))
+                throw new BadRequestException("Invalid ids, they must be comma separated numbers");
+            parsed.add(Long.parseLong(_id));
+            if (parsed.size() > maxIds)
+                throw tooManyIds;
+        }
+        return new ArrayList<>(parsed);
+    }
+
+    /**
+     * @return every id mapped to its entity, or to null when there is none, in the order of ids
+     */
+    @Transactional(readOnly = true)
+    public <T> Map<Long, T> findAll(Class<T> type, List<Long> ids) {
+        Map<Long, T> found = new LinkedHashMap<>();
+        if (ids.isEmpty())
+            return found;
+        List<T> entities = entityManager.unwrap(Session.class)
+                .byMultipleIds(type)
+                .withBatchSize(chunkSize)
+                .enableSessionCheck(true)
+                .multiLoad(ids);
+        // Ordered return: entities.get(i) is the entity of ids.get(i), or null
+        for (int i = 0; i < ids.size(); i++)
+            found.put(ids.get(i), entities.get(i));
+        return found;
+    }
+}
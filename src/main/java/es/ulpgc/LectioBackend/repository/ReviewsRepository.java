@@ -8,7 +8,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface ReviewsRepository extends JpaRepository<Reviews, Long> {
+public interface ReviewsRepository extends JpaRepository<Reviews, Long>, ReviewsRepositoryCustom {
 
     @Query(value="SELECT * FROM reviews WHERE book_id=?1 AND user_id=?2", nativeQuery = true)
     Reviews getReviewByBookIdAndUserId(long book_id, long user_id);
@@ -0,0 +1,32 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.projection.FieldSet;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Projections of FieldSet, see ReviewsRepositoryCustomImpl.
+ */
+public interface ReviewsRepositoryCustom {
+
+    /**
+     * Fields of a review that can be asked for with fields=, and their columns.
+     */
+    Map<String, String> FIELDS = fields();
+
+    List<Map<String, Object>> findFieldsByBookId(FieldSet fields, long book_id, int limit, int offset);
+
+    private static Map<String, String> fields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("id", "reviews.id");
+        fields.put("book_id", "reviews.book_id");
+        fields.put("user_id", "reviews.user_id");
+        fields.put("comment", "reviews.comment");
+        fields.put("punctuation", "reviews.punctuation");
+        fields.put("user_name", "reviews.user_name");
+        fields.put("created_at", "reviews.created_at");
+        return fields;
+    }
+}
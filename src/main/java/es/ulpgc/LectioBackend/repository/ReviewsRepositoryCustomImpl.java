@@ -0,0 +1,24 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.projection.FieldSet;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Map;
+
+public class ReviewsRepositoryCustomImpl implements ReviewsRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findFieldsByBookId(FieldSet fields, long book_id, int limit, int offset) {
+        return fields.read(entityManager
+                .createNativeQuery("SELECT " + fields.select() + " FROM reviews WHERE reviews.book_id = :book_id " +
+                        "ORDER BY reviews.id LIMIT :limit OFFSET :offset")
+                .setParameter("book_id", book_id)
+                .setParameter("limit", limit)
+                .setParameter("offset", offset));
+    }
+}
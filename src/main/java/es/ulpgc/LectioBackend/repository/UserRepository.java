@@ -6,6 +6,6 @@ import org.springframework.stereotype.Repository;
 import es.ulpgc.LectioBackend.model.User;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
     User findByEmail(String email);
 }
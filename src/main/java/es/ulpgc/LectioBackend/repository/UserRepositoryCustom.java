@@ -0,0 +1,32 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.projection.FieldSet;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Projections of FieldSet, see UserRepositoryCustomImpl.
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * Fields of a user that can be asked for with fields=, and their columns. Never the password.
+     */
+    Map<String, String> FIELDS = fields();
+
+    List<Map<String, Object>> findFields(FieldSet fields);
+
+    private static Map<String, String> fields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("user_id", "users.user_id");
+        fields.put("firstName", "users.first_name");
+        fields.put("lastName", "users.last_name");
+        fields.put("email", "users.email");
+        fields.put("photo", "users.photo");
+        fields.put("role", "users.role");
+        fields.put("additional", "users.additional");
+        return fields;
+    }
+}
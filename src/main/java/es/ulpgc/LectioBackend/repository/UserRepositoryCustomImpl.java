@@ -0,0 +1,20 @@
+package es.ulpgc.LectioBackend.repository;
+
+import es.ulpgc.LectioBackend.projection.FieldSet;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Map;
+
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findFields(FieldSet fields) {
+        return fields.read(entityManager
+                .createNativeQuery("SELECT " + fields.select() + " FROM users WHERE users.deleted_at IS NULL ORDER BY users.user_id"));
+    }
+}
@@ -0,0 +1,205 @@
+package es.ulpgc.LectioBackend.search;
+
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Column oriented copy of the searchable book columns, indexed by book id. Authors, publishers
+ * and genres are dictionary encoded so facet counts are a single pass over integer codes.
+ */
+@Service
+public class BookCatalog {
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final int[] NO_GENRES = new int[0];
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final BitSet present = new BitSet();
+    private String[] titles = new String[0];
+    private String[] authors = new String[0];
+    private String[] publishers = new String[0];
+    private int[] authorCodes = new int[0];
+    private int[] publisherCodes = new int[0];
+    private int[][] genreCodes = new int[0][];
+
+    private final Dictionary authorDictionary = new Dictionary();
+    private final Dictionary publisherDictionary = new Dictionary();
+    private final Dictionary genreDictionary = new Dictionary();
+
+    @PostConstruct
+    public void load() {
+        Page<Book> page = bookRepository.findAll(PageRequest.of(0, LOAD_PAGE_SIZE));
+        while (true) {
+            page.forEach(this::addBook);
+            if (!page.hasNext())
+                break;
+            page = bookRepository.findAll(page.nextPageable());
+        }
+    }
+
+    public void addBook(Book book) {
+        int id = (int) book.getId();
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(id + 1);
+            titles[id] = TextNormalizer.normalize(book.getTitle());
+            authors[id] = TextNormalizer.normalize(book.getAuthor());
+            publishers[id] = TextNormalizer.normalize(book.getPublisher());
+            authorCodes[id] = authorDictionary.encode(book.getAuthor());
+            publisherCodes[id] = publisherDictionary.encode(book.getPublisher());
+            genreCodes[id] = encodeGenres(book.getGenres());
+            present.set(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Evaluates the same contains filters as the LIKE queries of BookRepository.
+     *
+     * @param genreFilter books allowed by the genre filter, or null when there is no genre filter
+     * @return ids of every matching book
+     */
+    public BitSet match(String title, String author, String publisher, BitSet genreFilter) {
+        String _title = TextNormalizer.normalize(title);
+        String _author = TextNormalizer.normalize(author);
+        String _publisher = TextNormalizer.normalize(publisher);
+
+        lock.readLock().lock();
+        try {
+            BitSet candidates = (BitSet) present.clone();
+            if (genreFilter != null)
+                candidates.and(genreFilter);
+
+            BitSet hits = new BitSet();
+            for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                if (titles[id].contains(_title) && authors[id].contains(_author) && publishers[id].contains(_publisher))
+                    hits.set(id);
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts genres, publishers and authors of the hits in one pass.
+     *
+     * @param limit maximum entries returned per facet, highest counts first
+     */
+    public Map<String, List<FacetCount>> facets(BitSet hits, int limit) {
+        lock.readLock().lock();
+        try {
+            int[] genreCounts = new int[genreDictionary.size()];
+            int[] publisherCounts = new int[publisherDictionary.size()];
+            int[] authorCounts = new int[authorDictionary.size()];
+
+            for (int id = hits.nextSetBit(0); id >= 0; id = hits.nextSetBit(id + 1)) {
+                if (id >= titles.length || !present.get(id))
+                    continue;
+                authorCounts[authorCodes[id]]++;
+                publisherCounts[publisherCodes[id]]++;
+                for (int genre : genreCodes[id])
+                    genreCounts[genre]++;
+            }
+
+            Map<String, List<FacetCount>> facets = new LinkedHashMap<>();
+            facets.put("genres", top(genreCounts, genreDictionary, limit));
+            facets.put("publishers", top(publisherCounts, publisherDictionary, limit));
+            facets.put("authors", top(authorCounts, authorDictionary, limit));
+            return facets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<FacetCount> top(int[] counts, Dictionary dictionary, int limit) {
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Comparator.comparingInt((Integer code) -> counts[code]));
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] == 0)
+                continue;
+            if (heap.size() < limit) {
+                heap.add(code);
+            } else if (limit > 0 && counts[heap.peek()] < counts[code]) {
+                heap.poll();
+                heap.add(code);
+            }
+        }
+
+        List<FacetCount> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int code = heap.poll();
+            result.add(new FacetCount(dictionary.decode(code), counts[code]));
+        }
+        result.sort(Comparator.comparingInt(FacetCount::getCount).reversed());
+        return result;
+    }
+
+    private int[] encodeGenres(String[] genres) {
+        if (genres == null || genres.length == 0)
+            return NO_GENRES;
+        List<String> names = GenreIndex.parseGenres(genres);
+        int[] codes = new int[names.size()];
+        for (int i = 0; i < codes.length; i++)
+            codes[i] = genreDictionary.encode(names.get(i));
+        return codes;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= titles.length)
+            return;
+        int capacity = Math.max(size, titles.length + (titles.length >> 1) + 16);
+        titles = Arrays.copyOf(titles, capacity);
+        authors = Arrays.copyOf(authors, capacity);
+        publishers = Arrays.copyOf(publishers, capacity);
+        authorCodes = Arrays.copyOf(authorCodes, capacity);
+        publisherCodes = Arrays.copyOf(publisherCodes, capacity);
+        genreCodes = Arrays.copyOf(genreCodes, capacity);
+    }
+
+    /**
+     * Maps each distinct value, compared case and accent insensitively, to a dense code.
+     */
+    private static class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            String _value = (value == null) ? "" : value.trim();
+            return codes.computeIfAbsent(TextNormalizer.normalize(_value), key -> {
+                values.add(_value);
+                return values.size() - 1;
+            });
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package es.ulpgc.LectioBackend.search;
+
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.projection.FieldSet;
+import es.ulpgc.LectioBackend.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the filtered book searches on the backend chosen by lectio.search.backend: "like" (default)
+ * matches substrings with LIKE, "fulltext" uses the FULLTEXT indexes of the books table, matching
+ * words and word prefixes and sorting by relevance. Neither keeps anything in memory.
+ */
+@Service
+public class BookSearch {
+
+    public static final String LIKE = "like";
+    public static final String FULLTEXT = "fulltext";
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Value("${lectio.search.backend:" + LIKE + "}")
+    private String backend;
+
+    /**
+     * @param genreIds null to ignore genres, otherwise books need at least required of them
+     */
+    public List<Book> find(String title, String author, String publisher, Collection<Long> genreIds,
+                           int required, int limit, int offset) {
+        if (isFulltext())
+            return bookRepository.findByFulltext(title, author, publisher, genreIds, required, limit, offset);
+        if (genreIds != null)
+            return bookRepository.findByFilterAndGenres(title, author, publisher, genreIds, required, limit, offset);
+        if (author.isEmpty() && publisher.isEmpty())
+            return bookRepository.findByName(title, limit, offset);
+        return bookRepository.findByFilter(title, author, publisher, limit, offset);
+    }
+
+    /**
+     * Same books as find, reading only the given fields.
+     */
+    public List<Map<String, Object>> find(FieldSet fields, String title, String author, String publisher,
+                                          Collection<Long> genreIds, int required, int limit, int offset) {
+        return bookRepository.findFieldsByFilter(fields, title, author, publisher, genreIds, required, isFulltext(),
+                limit, offset);
+    }
+
+    public int count(String title, String author, String publisher, Collection<Long> genreIds, int required) {
+        if (isFulltext())
+            return bookRepository.countByFulltext(title, author, publisher, genreIds, required);
+        if (genreIds != null)
+            return bookRepository.countBooksSearchedWithGenres(title, author, publisher, genreIds, required);
+        return bookRepository.countBooksSearched(title, author, publisher);
+    }
+
+    private boolean isFulltext() {
+        return FULLTEXT.equalsIgnoreCase(backend);
+    }
+}
@@ -0,0 +1,20 @@
+package es.ulpgc.LectioBackend.search;
+
+public class FacetCount {
+
+    private final String name;
+    private final int count;
+
+    public FacetCount(String name, int count) {
+        this.name = name;
+        this.count = count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,37 @@
+package es.ulpgc.LectioBackend.search;
+
+import java.util.regex.Pattern;
+
+/**
+ * Turns what the user typed into a MATCH ... AGAINST query in boolean mode. The text is split where
+ * the FULLTEXT parser splits it, so operators like + - " ( ) * never reach the server.
+ */
+public final class FulltextQuery {
+
+    private static final Pattern NOT_WORD = Pattern.compile("[^\\p{L}\\p{N}_]+");
+
+    private FulltextQuery() {
+    }
+
+    /**
+     * "rimas y leyendas" becomes "+rimas* +leyendas*" with the default minimum of 3, words shorter
+     * than minTokenSize aren't in the index and are left out.
+     *
+     * @return null when no word is long enough
+     */
+    public static String booleanQuery(String text, int minTokenSize) {
+        StringBuilder query = new StringBuilder();
+        for (String word : NOT_WORD.split(text)) {
+            if (word.codePointCount(0, word.length()) < minTokenSize)
+                continue;
+            if (query.length() > 0)
+                query.append(' ');
+            query.append('+').append(word).append('*');
+        }
+        return (query.length() == 0) ? null : query.toString();
+    }
+
+    public static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,301 @@
+package es.ulpgc.LectioBackend.search;
+
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Typo tolerant search over titles and authors. Candidates come from a character trigram index and
+ * are verified with an edit distance, where the query may match any part of the title or author,
+ * and kept when it is within max_edits. Everything is served from memory.
+ */
+@Service
+public class FuzzyIndex {
+
+    public static final int MAX_RESULTS = 50;
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final int MAX_CANDIDATES = 200;
+    private static final int TITLE = 0;
+    private static final int AUTHOR = 1;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, IntList> postings = new HashMap<>();
+    private long[] bookIds = new long[0];
+    private String[] titles = new String[0];
+    private String[] authors = new String[0];
+    private String[] fields = new String[0];
+    private int books;
+    private long postingCount;
+
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    @PostConstruct
+    public void load() {
+        Page<Book> page = bookRepository.findAll(PageRequest.of(0, LOAD_PAGE_SIZE));
+        while (true) {
+            page.forEach(this::addBook);
+            if (!page.hasNext())
+                break;
+            page = bookRepository.findAll(page.nextPageable());
+        }
+    }
+
+    public void addBook(Book book) {
+        lock.writeLock().lock();
+        try {
+            if (books == bookIds.length) {
+                int capacity = books + (books >> 1) + 16;
+                bookIds = Arrays.copyOf(bookIds, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                authors = Arrays.copyOf(authors, capacity);
+                fields = Arrays.copyOf(fields, 2 * capacity);
+            }
+            int ordinal = books++;
+            bookIds[ordinal] = book.getId();
+            titles[ordinal] = book.getTitle();
+            authors[ordinal] = book.getAuthor();
+            index(2 * ordinal + TITLE, TextNormalizer.normalize(book.getTitle()));
+            index(2 * ordinal + AUTHOR, TextNormalizer.normalize(book.getAuthor()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param max_edits maximum edit distance allowed, a negative value picks it from the query length
+     * @return best match per book, closest first
+     */
+    public List<FuzzyMatch> search(String query, int max_edits, int limit) {
+        String _query = TextNormalizer.normalize(query);
+        int _limit = Math.max(0, Math.min(limit, MAX_RESULTS));
+        if (_query.isEmpty() || _limit == 0)
+            return new ArrayList<>();
+        int edits = (max_edits < 0) ? defaultEdits(_query) : Math.min(max_edits, _query.length() - 1);
+
+        lock.readLock().lock();
+        try {
+            Workspace workspace = workspaces.get();
+            int[] candidates = candidates(_query, edits, workspace);
+
+            Comparator<FuzzyMatch> ranking = rank(_query);
+            Map<Long, FuzzyMatch> best = new HashMap<>();
+            for (int doc : candidates) {
+                String field = fields[doc];
+                int distance = workspace.substringDistance(_query, field);
+                if (distance > edits)
+                    continue;
+                int ordinal = doc >> 1;
+                double similarity = 1.0 - (double) distance / _query.length();
+                FuzzyMatch match = new FuzzyMatch(bookIds[ordinal], titles[ordinal], authors[ordinal],
+                        ((doc & 1) == TITLE) ? "title" : "author", distance, similarity);
+                best.merge(match.getBook_id(), match, (a, b) -> ranking.compare(a, b) <= 0 ? a : b);
+            }
+
+            List<FuzzyMatch> matches = new ArrayList<>(best.values());
+            matches.sort(ranking);
+            return (matches.size() > _limit) ? new ArrayList<>(matches.subList(0, _limit)) : matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return indexed books, trigram and posting counts and estimated heap bytes
+     */
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) bookIds.length * (8 + 4 + 4) + (long) fields.length * 4
+                    + (long) postings.size() * (32 + 24 + 16 + 16) + postingCount * 4;
+            for (int i = 0; i < books; i++)
+                bytes += 40 + fields[2 * i].length() + 40 + fields[2 * i + 1].length();
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("books", books);
+            stats.put("trigrams", postings.size());
+            stats.put("postings", postingCount);
+            stats.put("estimatedBytes", bytes);
+            stats.put("estimatedBytesPerBook", (books == 0) ? 0 : bytes / books);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Comparator<FuzzyMatch> rank(String query) {
+        return Comparator.comparingInt(FuzzyMatch::getDistance)
+                .thenComparingInt(match -> Math.abs(fieldOf(match).length() - query.length()))
+                .thenComparingLong(FuzzyMatch::getBook_id);
+    }
+
+    private static String fieldOf(FuzzyMatch match) {
+        return match.getField().equals("title") ? match.getTitle() : match.getAuthor();
+    }
+
+    private void index(int doc, String field) {
+        fields[doc] = field;
+        for (long gram : trigrams(field)) {
+            postings.computeIfAbsent(gram, key -> new IntList()).add(doc);
+            postingCount++;
+        }
+    }
+
+    /**
+     * Counts shared trigrams per document and keeps the MAX_CANDIDATES documents sharing most of them,
+     * ignoring those below the q-gram lemma bound for the allowed edits. A document sharing minShared
+     * of the grams must appear in one of the grams.length - minShared + 1 rarest posting lists, so only
+     * those seed candidates; the longer lists are probed by binary search when that is cheaper.
+     */
+    private int[] candidates(String query, int edits, Workspace workspace) {
+        long[] grams = trigrams(query);
+        int minShared = Math.max(1, grams.length - 3 * edits);
+
+        List<IntList> lists = new ArrayList<>(grams.length);
+        for (long gram : grams) {
+            IntList docs = postings.get(gram);
+            if (docs != null)
+                lists.add(docs);
+        }
+        lists.sort(Comparator.comparingInt((IntList docs) -> docs.size));
+        int seeding = Math.max(0, Math.min(lists.size(), grams.length - minShared + 1));
+
+        int[] counters = workspace.counters(2 * books);
+        IntList touched = workspace.touched;
+        touched.clear();
+        for (int l = 0; l < lists.size(); l++) {
+            IntList docs = lists.get(l);
+            if (l < seeding) {
+                for (int i = 0; i < docs.size; i++) {
+                    int doc = docs.values[i];
+                    if (counters[doc]++ == 0)
+                        touched.add(doc);
+                }
+            } else if ((long) touched.size * (32 - Integer.numberOfLeadingZeros(docs.size)) < docs.size) {
+                for (int i = 0; i < touched.size; i++) {
+                    int doc = touched.values[i];
+                    if (Arrays.binarySearch(docs.values, 0, docs.size, doc) >= 0)
+                        counters[doc]++;
+                }
+            } else {
+                for (int i = 0; i < docs.size; i++) {
+                    int doc = docs.values[i];
+                    if (counters[doc] > 0)
+                        counters[doc]++;
+                }
+            }
+        }
+
+        int[] histogram = new int[grams.length + 1];
+        for (int i = 0; i < touched.size; i++)
+            histogram[counters[touched.values[i]]]++;
+        int cutoff = grams.length;
+        int selected = histogram[cutoff];
+        while (cutoff > minShared && selected + histogram[cutoff - 1] <= MAX_CANDIDATES)
+            selected += histogram[--cutoff];
+        if (selected == 0 && cutoff > minShared)
+            cutoff = minShared;
+
+        IntList candidates = new IntList();
+        for (int i = 0; i < touched.size; i++) {
+            int doc = touched.values[i];
+            if (counters[doc] >= cutoff && candidates.size < MAX_CANDIDATES)
+                candidates.add(doc);
+            counters[doc] = 0;
+        }
+        return Arrays.copyOf(candidates.values, candidates.size);
+    }
+
+    private static int defaultEdits(String query) {
+        if (query.length() <= 4)
+            return 1;
+        return (query.length() <= 8) ? 2 : 3;
+    }
+
+    static long[] trigrams(String text) {
+        String padded = " " + text + " ";
+        long[] grams = new long[Math.max(0, padded.length() - 2)];
+        for (int i = 0; i < grams.length; i++)
+            grams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Per thread scratch arrays so queries do not allocate per document.
+     */
+    private static class Workspace {
+        final IntList touched = new IntList();
+        int[] counters = new int[0];
+        int[] previous = new int[0];
+        int[] current = new int[0];
+
+        int[] counters(int size) {
+            if (counters.length < size)
+                counters = new int[size + (size >> 2)];
+            return counters;
+        }
+
+        /**
+         * Edit distance between the query and the closest substring of the field.
+         */
+        int substringDistance(String query, String field) {
+            int m = query.length();
+            if (previous.length < m + 1) {
+                previous = new int[m + 1];
+                current = new int[m + 1];
+            }
+            for (int i = 0; i <= m; i++)
+                previous[i] = i;
+
+            int best = previous[m];
+            for (int j = 1; j <= field.length(); j++) {
+                current[0] = 0;
+                char c = field.charAt(j - 1);
+                for (int i = 1; i <= m; i++) {
+                    int cost = (query.charAt(i - 1) == c) ? 0 : 1;
+                    current[i] = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                }
+                best = Math.min(best, current[m]);
+                int[] swap = previous;
+                previous = current;
+                current = swap;
+                if (best == 0)
+                    break;
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package es.ulpgc.LectioBackend.search;
+
+public class FuzzyMatch {
+
+    private final long book_id;
+    private final String title;
+    private final String author;
+    private final String field;
+    private final int distance;
+    private final double similarity;
+
+    public FuzzyMatch(long book_id, String title, String author, String field, int distance, double similarity) {
+        this.book_id = book_id;
+        this.title = title;
+        this.author = author;
+        this.field = field;
+        this.distance = distance;
+        this.similarity = similarity;
+    }
+
+    public long getBook_id() {
+        return book_id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+}
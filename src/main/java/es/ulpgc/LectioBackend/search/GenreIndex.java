@@ -0,0 +1,224 @@
+package es.ulpgc.LectioBackend.search;
+
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.model.BookGenre;
+import es.ulpgc.LectioBackend.model.BookGenreId;
+import es.ulpgc.LectioBackend.model.Genre;
+import es.ulpgc.LectioBackend.monitoring.CacheAccessEvent;
+import es.ulpgc.LectioBackend.repository.BookGenreRepository;
+import es.ulpgc.LectioBackend.repository.BookRepository;
+import es.ulpgc.LectioBackend.repository.GenreRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Genre dictionary backed by the genres/book_genres tables, with one bitmap of book ids per genre
+ * so genre filters are answered with bitmap intersections instead of LIKE scans.
+ */
+@Service
+public class GenreIndex {
+
+    @Autowired
+    private GenreRepository genreRepository;
+
+    @Autowired
+    private BookGenreRepository bookGenreRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Genre> genresByKey = new HashMap<>();
+    private final Map<Long, BitSet> booksByGenre = new HashMap<>();
+
+    @PostConstruct
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            genresByKey.clear();
+            booksByGenre.clear();
+            for (Genre genre : genreRepository.findAll()) {
+                genresByKey.put(key(genre.getName()), genre);
+                booksByGenre.put(genre.getId(), new BitSet());
+            }
+            for (Object[] pair : bookGenreRepository.findAllPairs()) {
+                long book_id = ((Number) pair[0]).longValue();
+                long genre_id = ((Number) pair[1]).longValue();
+                booksByGenre.computeIfAbsent(genre_id, id -> new BitSet()).set((int) book_id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        bookRepository.findBooksWithoutGenres().forEach(this::indexBook);
+    }
+
+    /**
+     * Adds the book's genres to the dictionary and to the book_genres relation.
+     */
+    public void indexBook(Book book) {
+        lock.writeLock().lock();
+        try {
+            for (String name : parseGenres(book.getGenres())) {
+                Genre genre = genre(name);
+                bookGenreRepository.save(new BookGenre(new BookGenreId(book.getId(), genre.getId())));
+                booksByGenre.computeIfAbsent(genre.getId(), id -> new BitSet()).set((int) book.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return books having every one of the genres, empty if any genre is unknown
+     */
+    public BitSet booksWithAll(List<String> genres) {
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            for (String name : genres) {
+                BitSet books = bitmap(name);
+                if (books == null)
+                    return new BitSet();
+                if (result == null)
+                    result = (BitSet) books.clone();
+                else
+                    result.and(books);
+            }
+            return (result == null) ? new BitSet() : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return books having at least one of the genres
+     */
+    public BitSet booksWithAny(List<String> genres) {
+        lock.readLock().lock();
+        try {
+            BitSet result = new BitSet();
+            for (String name : genres) {
+                BitSet books = bitmap(name);
+                if (books != null)
+                    result.or(books);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return dictionary ids of the known genres among the given names
+     */
+    public List<Long> genreIds(List<String> genres) {
+        lock.readLock().lock();
+        try {
+            List<Long> ids = new ArrayList<>();
+            for (String name : genres) {
+                Genre genre = genresByKey.get(key(name));
+                if (genre != null)
+                    ids.add(genre.getId());
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every genre with its bitmap while holding the read lock. The bitmaps must not be modified.
+     */
+    public void forEachGenre(BiConsumer<String, BitSet> consumer) {
+        lock.readLock().lock();
+        try {
+            for (Genre genre : genresByKey.values()) {
+                BitSet books = booksByGenre.get(genre.getId());
+                if (books != null)
+                    consumer.accept(genre.getName(), books);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the set bits from position offset on, at most limit of them
+     */
+    public static List<Long> page(BitSet books, int offset, int limit) {
+        List<Long> ids = new ArrayList<>(Math.max(0, Math.min(limit, books.cardinality())));
+        int skipped = 0;
+        for (int id = books.nextSetBit(0); id >= 0 && ids.size() < limit; id = books.nextSetBit(id + 1)) {
+            if (skipped++ >= offset)
+                ids.add((long) id);
+        }
+        return ids;
+    }
+
+    /**
+     * Splits a comma separated genre parameter, dropping blanks and duplicates. Genres are matched
+     * ignoring case and accents, so Fantasy,fantasy is one genre and keeps the first spelling.
+     */
+    public static List<String> parseGenres(String... genres) {
+        Map<String, String> names = new LinkedHashMap<>();
+        for (String value : genres) {
+            if (value == null)
+                continue;
+            for (String name : value.split(",")) {
+                if (!name.trim().isEmpty())
+                    names.putIfAbsent(key(name), name.trim());
+            }
+        }
+        return new ArrayList<>(names.values());
+    }
+
+    /**
+     * The genre of the name, created when there is none. genres.name is unique ignoring case and
+     * accents, the genre may exist under another spelling or have just been created by another instance.
+     */
+    private Genre genre(String name) {
+        Genre genre = genresByKey.get(key(name));
+        if (genre != null)
+            return genre;
+        genre = genreRepository.findByName(name);
+        if (genre == null) {
+            try {
+                genre = genreRepository.saveAndFlush(new Genre(name));
+            } catch (DataIntegrityViolationException e) {
+                genre = genreRepository.findByName(name);
+                if (genre == null)
+                    throw e;
+            }
+        }
+        genresByKey.put(key(name), genre);
+        return genre;
+    }
+
+    private BitSet bitmap(String name) {
+        Genre genre = genresByKey.get(key(name));
+        BitSet books = (genre == null) ? null : booksByGenre.get(genre.getId());
+        CacheAccessEvent.record("genres", name, books != null);
+        return books;
+    }
+
+    /**
+     * Ignores case and accents, like the collation of genres.name
+     */
+    private static String key(String name) {
+        return TextNormalizer.normalize(name);
+    }
+}
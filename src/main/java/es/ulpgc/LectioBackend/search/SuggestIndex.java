@@ -0,0 +1,265 @@
+package es.ulpgc.LectioBackend.search;
+
+import es.ulpgc.LectioBackend.model.Book;
+import es.ulpgc.LectioBackend.repository.BookListRepository;
+import es.ulpgc.LectioBackend.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Typeahead over normalized titles and authors. Keys live in one sorted array, so a prefix is a
+ * binary searched range; completions inside the range are ranked by how many booklists hold the book.
+ * Results for every prefix whose range is wider than SCAN_LIMIT keys are precomputed, so a query
+ * scans at most SCAN_LIMIT keys.
+ * The index is an immutable snapshot rebuilt in the background when books or popularity change.
+ */
+@Service
+public class SuggestIndex {
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final int SCAN_LIMIT = 256;
+    private static final byte TITLE = 0;
+    private static final byte AUTHOR = 1;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookListRepository bookListRepository;
+
+    private final Map<Long, String[]> books = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> popularity = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private volatile Snapshot snapshot = new Snapshot(new ArrayList<>());
+
+    @PostConstruct
+    public void load() {
+        Page<Book> page = bookRepository.findAll(PageRequest.of(0, LOAD_PAGE_SIZE));
+        while (true) {
+            page.forEach(book -> books.put(book.getId(), new String[]{book.getTitle(), book.getAuthor()}));
+            if (!page.hasNext())
+                break;
+            page = bookRepository.findAll(page.nextPageable());
+        }
+        for (Object[] row : bookListRepository.countListsPerBook())
+            popularity.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+        rebuild();
+    }
+
+    public void addBook(Book book) {
+        books.put(book.getId(), new String[]{book.getTitle(), book.getAuthor()});
+        dirty.set(true);
+    }
+
+    /**
+     * Called when a book is added to (delta 1) or removed from (delta -1) a booklist.
+     */
+    public void recordListChange(long book_id, int delta) {
+        popularity.merge(book_id, delta, (a, b) -> Math.max(0, a + b));
+        dirty.set(true);
+    }
+
+    @Scheduled(fixedDelayString = "${lectio.suggest.rebuild-interval-ms:60000}")
+    public void rebuildIfDirty() {
+        if (dirty.getAndSet(false))
+            rebuild();
+    }
+
+    public List<Suggestion> suggest(String query, int limit) {
+        String prefix = TextNormalizer.normalize(query);
+        int _limit = Math.max(0, Math.min(limit, MAX_SUGGESTIONS));
+        if (prefix.isEmpty() || _limit == 0)
+            return new ArrayList<>();
+
+        Snapshot current = snapshot;
+        int[] ranked = current.topByPrefix.get(prefix);
+        if (ranked == null)
+            ranked = current.top(prefix, _limit);
+
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(_limit, ranked.length));
+        for (int i = 0; i < ranked.length && i < _limit; i++)
+            suggestions.add(current.suggestion(ranked[i]));
+        return suggestions;
+    }
+
+    /**
+     * @return entry count and estimated heap used by the current snapshot
+     */
+    public Map<String, Object> stats() {
+        Snapshot current = snapshot;
+        long bytes = current.estimatedBytes();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("titles", current.titleCount);
+        stats.put("entries", current.keys.length);
+        stats.put("precomputedPrefixes", current.topByPrefix.size());
+        stats.put("estimatedBytes", bytes);
+        stats.put("estimatedBytesPerMillionTitles",
+                (current.titleCount == 0) ? 0 : bytes * 1_000_000L / current.titleCount);
+        return stats;
+    }
+
+    private synchronized void rebuild() {
+        List<Entry> entries = new ArrayList<>(books.size() + books.size() / 4);
+        Map<String, Entry> authors = new HashMap<>();
+        books.forEach((id, book) -> {
+            int bookPopularity = popularity.getOrDefault(id, 0);
+            entries.add(new Entry(TextNormalizer.normalize(book[0]), book[0], TITLE, id, bookPopularity));
+
+            String author = TextNormalizer.normalize(book[1]);
+            Entry entry = authors.get(author);
+            if (entry == null)
+                authors.put(author, new Entry(author, book[1], AUTHOR, -1, bookPopularity));
+            else
+                entry.popularity += bookPopularity;
+        });
+        entries.addAll(authors.values());
+        entries.removeIf(entry -> entry.key.isEmpty());
+        snapshot = new Snapshot(entries);
+    }
+
+    private static class Entry {
+        final String key;
+        final String text;
+        final byte type;
+        final long book_id;
+        int popularity;
+
+        Entry(String key, String text, byte type, long book_id, int popularity) {
+            this.key = key;
+            this.text = text;
+            this.type = type;
+            this.book_id = book_id;
+            this.popularity = popularity;
+        }
+    }
+
+    private static class Snapshot {
+        final String[] keys;
+        final String[] texts;
+        final byte[] types;
+        final long[] bookIds;
+        final int[] popularity;
+        final int titleCount;
+        final Map<String, int[]> topByPrefix = new HashMap<>();
+
+        Snapshot(List<Entry> entries) {
+            entries.sort(Comparator.comparing((Entry entry) -> entry.key));
+            int size = entries.size();
+            keys = new String[size];
+            texts = new String[size];
+            types = new byte[size];
+            bookIds = new long[size];
+            popularity = new int[size];
+            int titles = 0;
+            for (int i = 0; i < size; i++) {
+                Entry entry = entries.get(i);
+                keys[i] = entry.key;
+                texts[i] = entry.text;
+                types[i] = entry.type;
+                bookIds[i] = entry.book_id;
+                popularity[i] = entry.popularity;
+                if (entry.type == TITLE)
+                    titles++;
+            }
+            titleCount = titles;
+
+            precompute("", 0, size);
+        }
+
+        /**
+         * Stores the ranking of every prefix that matches more than SCAN_LIMIT keys.
+         */
+        private void precompute(String prefix, int from, int to) {
+            if (to - from <= SCAN_LIMIT)
+                return;
+            if (!prefix.isEmpty())
+                topByPrefix.put(prefix, top(from, to, MAX_SUGGESTIONS));
+
+            int length = prefix.length();
+            int i = from;
+            while (i < to) {
+                if (keys[i].length() == length) {
+                    i++;
+                    continue;
+                }
+                String child = keys[i].substring(0, length + 1);
+                int end = lowerBound(child + Character.MAX_VALUE);
+                precompute(child, i, end);
+                i = end;
+            }
+        }
+
+        /**
+         * @return positions of the most popular keys starting with prefix, most popular first
+         */
+        int[] top(String prefix, int limit) {
+            return top(lowerBound(prefix), lowerBound(prefix + Character.MAX_VALUE), limit);
+        }
+
+        private int[] top(int from, int to, int limit) {
+            int[] ranked = new int[Math.min(limit, to - from)];
+            int count = 0;
+            for (int i = from; i < to && ranked.length > 0; i++) {
+                if (count == ranked.length && popularity[i] <= popularity[ranked[count - 1]])
+                    continue;
+                int position = (count < ranked.length) ? count++ : count - 1;
+                while (position > 0 && popularity[ranked[position - 1]] < popularity[i]) {
+                    ranked[position] = ranked[position - 1];
+                    position--;
+                }
+                ranked[position] = i;
+            }
+            return ranked;
+        }
+
+        Suggestion suggestion(int position) {
+            return new Suggestion(texts[position], (types[position] == TITLE) ? "title" : "author",
+                    (bookIds[position] < 0) ? null : bookIds[position], popularity[position]);
+        }
+
+        long estimatedBytes() {
+            long bytes = 16L * 5 + (long) keys.length * (4 + 4 + 1 + 8 + 4);
+            for (int i = 0; i < keys.length; i++) {
+                bytes += stringBytes(keys[i]);
+                if (texts[i] != keys[i])
+                    bytes += stringBytes(texts[i]);
+            }
+            for (Map.Entry<String, int[]> entry : topByPrefix.entrySet())
+                bytes += 48 + stringBytes(entry.getKey()) + 16 + 4L * entry.getValue().length;
+            return bytes;
+        }
+
+        private int lowerBound(String key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle].compareTo(key) < 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        private static long stringBytes(String s) {
+            return 24 + 16 + s.length();
+        }
+    }
+}
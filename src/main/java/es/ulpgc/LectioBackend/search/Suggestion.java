@@ -0,0 +1,32 @@
+package es.ulpgc.LectioBackend.search;
+
+public class Suggestion {
+
+    private final String text;
+    private final String type;
+    private final Long book_id;
+    private final int popularity;
+
+    public Suggestion(String text, String type, Long book_id, int popularity) {
+        this.text = text;
+        this.type = type;
+        this.book_id = book_id;
+        this.popularity = popularity;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getBook_id() {
+        return book_id;
+    }
+
+    public int getPopularity() {
+        return popularity;
+    }
+}
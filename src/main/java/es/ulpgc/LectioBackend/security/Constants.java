@@ -5,6 +5,7 @@ public class Constants {
     // Spring Security
 
     public static final String LOGIN_URL = "/api/login";
+    public static final String PHOTOS_URL = "/api/photos/**";
     public static final String HEADER_AUTHORIZACION_KEY = "Authorization";
     public static final String TOKEN_BEARER_PREFIX = "Bearer ";
 
@@ -0,0 +1,11 @@
+package es.ulpgc.LectioBackend.security;
+
+/**
+ * Limits the login by IP. Runs before the authentication filter, which answers the login itself.
+ */
+public class LoginRateLimitFilter extends RateLimitFilter {
+
+    public LoginRateLimitFilter(RateLimiter rateLimiter) {
+        super(rateLimiter, true);
+    }
+}
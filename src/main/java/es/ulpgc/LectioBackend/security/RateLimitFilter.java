@@ -0,0 +1,64 @@
+package es.ulpgc.LectioBackend.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static es.ulpgc.LectioBackend.security.Constants.LOGIN_URL;
+
+/**
+ * Rejects requests over the client's limit with 429 and Retry-After. Runs after JWTAuthorizationFilter
+ * and limits by JWT subject, falling back to the IP for anonymous requests; the login is limited by
+ * LoginRateLimitFilter.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+    private final boolean login;
+
+    public RateLimitFilter(RateLimiter rateLimiter) {
+        this(rateLimiter, false);
+    }
+
+    protected RateLimitFilter(RateLimiter rateLimiter, boolean login) {
+        this.rateLimiter = rateLimiter;
+        this.login = login;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !rateLimiter.isEnabled() || login != request.getRequestURI().startsWith(LOGIN_URL);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        String group = rateLimiter.group(req.getRequestURI());
+        long wait = rateLimiter.acquire(group, client(req));
+        if (wait == 0) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        long seconds = (wait + 999) / 1000;
+        res.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        res.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        res.setHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
+        res.getWriter().write("{ \"message\": \"Too many requests, try again in " + seconds + " seconds\" }");
+    }
+
+    private String client(HttpServletRequest req) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (!login && authentication != null && authentication.getPrincipal() instanceof String)
+            return "user:" + authentication.getPrincipal();
+        return "ip:" + req.getRemoteAddr();
+    }
+}
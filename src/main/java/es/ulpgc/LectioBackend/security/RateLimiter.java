@@ -0,0 +1,129 @@
+package es.ulpgc.LectioBackend.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static es.ulpgc.LectioBackend.security.Constants.LOGIN_URL;
+
+/**
+ * Token buckets per endpoint group and client. Each bucket is a single AtomicLong holding the time at
+ * which it will be full again (the generic cell rate algorithm, equivalent to a token bucket refilled
+ * continuously), updated with compare-and-set, so checking a request takes no lock and no database.
+ * A bucket that is full again carries no state and is dropped by the periodic sweep, and the number of
+ * buckets is bounded by lectio.ratelimit.max-clients.
+ */
+@Component
+public class RateLimiter {
+
+    public static final String LOGIN = "login";
+    public static final String SEARCH = "search";
+    public static final String PROGRESS = "progress";
+    public static final String DEFAULT = "default";
+
+    private static final String OVERFLOW = "*";
+    private static final long SWEEP_THROTTLE_NANOS = 1_000_000_000L;
+
+    @Value("${lectio.ratelimit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${lectio.ratelimit.max-clients:100000}")
+    private int maxClients;
+
+    private final Environment environment;
+
+    private final Map<String, Limit> limits = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    public RateLimiter(Environment environment) {
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    public void load() {
+        limits.put(LOGIN, limit(LOGIN, 10, 0.2));
+        limits.put(SEARCH, limit(SEARCH, 30, 5));
+        limits.put(PROGRESS, limit(PROGRESS, 20, 2));
+        limits.put(DEFAULT, limit(DEFAULT, 120, 20));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String group(String uri) {
+        if (uri.startsWith(LOGIN_URL))
+            return LOGIN;
+        if (uri.startsWith("/api/books/search"))
+            return SEARCH;
+        if (uri.startsWith("/api/books/progress"))
+            return PROGRESS;
+        return DEFAULT;
+    }
+
+    /**
+     * Takes a token from the client's bucket of the group.
+     *
+     * @return 0 when allowed, otherwise the milliseconds until a token is available
+     */
+    public long acquire(String group, String client) {
+        Limit limit = limits.get(group);
+        long now = System.nanoTime();
+        AtomicLong bucket = bucket(group + ':' + client, now);
+        while (true) {
+            long full = bucket.get();
+            long start = Math.max(full, now);
+            if (start - now > limit.burst) {
+                return Math.max(1, (start - now - limit.burst + 999_999) / 1_000_000);
+            }
+            if (bucket.compareAndSet(full, start + limit.interval)) {
+                return 0;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${lectio.ratelimit.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null)
+            return bucket;
+        if (buckets.size() >= maxClients) {
+            long last = lastSweep.get();
+            if (now - last > SWEEP_THROTTLE_NANOS && lastSweep.compareAndSet(last, now))
+                sweep();
+            // Still full of active clients: the newcomers share one bucket per group
+            if (buckets.size() >= maxClients)
+                return buckets.computeIfAbsent(key.substring(0, key.indexOf(':') + 1) + OVERFLOW, k -> new AtomicLong(now));
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    private Limit limit(String group, int capacity, double perSecond) {
+        return new Limit(environment.getProperty("lectio.ratelimit." + group + ".capacity", Integer.class, capacity),
+                environment.getProperty("lectio.ratelimit." + group + ".refill-per-second", Double.class, perSecond));
+    }
+
+    private static class Limit {
+        // Nanoseconds to refill one token, and how far ahead of now the bucket may be full again
+        final long interval;
+        final long burst;
+
+        Limit(int capacity, double perSecond) {
+            this.interval = (long) (1_000_000_000L / perSecond);
+            this.burst = (capacity - 1) * interval;
+        }
+    }
+}
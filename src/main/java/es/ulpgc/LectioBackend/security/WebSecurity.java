@@ -12,6 +12,7 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -20,6 +21,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static es.ulpgc.LectioBackend.security.Constants.LOGIN_URL;
+import static es.ulpgc.LectioBackend.security.Constants.PHOTOS_URL;
 
 @Configuration
 @EnableWebSecurity
@@ -28,6 +30,9 @@ public class WebSecurity extends WebSecurityConfigurerAdapter {
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
     @Bean
     public BCryptPasswordEncoder bCryptPasswordEncoder() {
         return new BCryptPasswordEncoder();
@@ -39,17 +44,22 @@ public class WebSecurity extends WebSecurityConfigurerAdapter {
          * 1. Se desactiva el uso de cookies
          * 2. Se activa la configuración CORS con los valores por defecto
          * 3. Se desactiva el filtro CSRF
-         * 4. Se indica que el login no requiere autenticación
+         * 4. Se indica que el login y las fotos (direccionadas por su contenido) no requieren autenticación
          * 5. Se indica que el resto de URLs esten securizadas
+         * 6. Se limitan las peticiones por IP en el login y por usuario en el resto
          */
         httpSecurity
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
                 .cors().and()
                 .csrf().disable()
                 .authorizeRequests().antMatchers(HttpMethod.POST, LOGIN_URL).permitAll()
+                .antMatchers(HttpMethod.GET, PHOTOS_URL).permitAll()
+                .antMatchers(HttpMethod.HEAD, PHOTOS_URL).permitAll()
                 .anyRequest().authenticated().and()
                 .addFilter(getAuthenticationFilter(authenticationManager()))
-                .addFilter(new JWTAuthorizationFilter(authenticationManager()));
+                .addFilter(new JWTAuthorizationFilter(authenticationManager()))
+                .addFilterBefore(new LoginRateLimitFilter(rateLimiter), UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(new RateLimitFilter(rateLimiter), JWTAuthorizationFilter.class);
     }
 
     @Override
@@ -0,0 +1,51 @@
+package es.ulpgc.LectioBackend.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * With spring.main.lazy-initialization the application answers as soon as the web server and the
+ * security chain are up, and every other bean is created by the first request that needs it. So that
+ * the first search or recommendation doesn't pay for loading its index, the beans still missing are
+ * created on a background thread once the application is ready.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = {"spring.main.lazy-initialization", "lectio.startup.warmup"}, havingValue = "true")
+public class StartupWarmup implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupWarmup.class);
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        ConfigurableListableBeanFactory beanFactory = event.getApplicationContext().getBeanFactory();
+        Thread thread = new Thread(() -> warmUp(beanFactory), "startup-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void warmUp(ConfigurableListableBeanFactory beanFactory) {
+        long start = System.nanoTime();
+        int created = 0;
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (!definition.isSingleton() || definition.isAbstract() || beanFactory.containsSingleton(name))
+                continue;
+            try {
+                beanFactory.getBean(name);
+                created++;
+            } catch (Exception e) {
+                LOGGER.debug("Couldn't warm up bean {}", name, e);
+            }
+        }
+        LOGGER.info("Warmed up {} lazy beans in {} ms", created, (System.nanoTime() - start) / 1_000_000);
+    }
+}
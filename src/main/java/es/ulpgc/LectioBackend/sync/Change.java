@@ -0,0 +1,35 @@
+package es.ulpgc.LectioBackend.sync;
+
+/**
+ * The last change of one of a user's rows: a list, a book in a list or a club subscription.
+ */
+public class Change {
+
+    private final String entity;
+    private final String key;
+    private final long seq;
+    private final boolean deleted;
+
+    public Change(String entity, String key, long seq, boolean deleted) {
+        this.entity = entity;
+        this.key = key;
+        this.seq = seq;
+        this.deleted = deleted;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+}
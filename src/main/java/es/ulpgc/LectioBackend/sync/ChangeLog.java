@@ -0,0 +1,86 @@
+package es.ulpgc.LectioBackend.sync;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Which of a user's rows changed, and in what order. Every change takes the next value of the user's
+ * users.change_seq and overwrites the previous change of the same row in user_changes, so the log
+ * holds one entry per row ever touched instead of growing with every write. Both happen in one
+ * transaction that keeps the user's row locked, so a user's changes commit in seq order and a sync
+ * that has seen seq n never misses a change below it. Callers record a change in the transaction of
+ * the write itself: a change that couldn't be recorded rolls the write back, or a client syncing
+ * with since would never see it.
+ */
+@Service
+public class ChangeLog {
+
+    public static final String LIST = "list";
+    public static final String BOOK = "book";
+    public static final String CLUB = "club";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    public void listChanged(long user_id, long list_id) {
+        record(user_id, LIST, Long.toString(list_id), false);
+    }
+
+    public void bookChanged(long user_id, long list_id, long book_id, boolean deleted) {
+        record(user_id, BOOK, bookKey(list_id, book_id), deleted);
+    }
+
+    public void subscriptionChanged(long user_id, long club_id, boolean deleted) {
+        record(user_id, CLUB, Long.toString(club_id), deleted);
+    }
+
+    /**
+     * The club itself changed or is about to be deleted, for every user subscribed to it.
+     */
+    public void clubChanged(long club_id, boolean deleted) {
+        List<Long> subscribers = jdbcTemplate.queryForList("SELECT user_id FROM club_subscribers WHERE club_id = ?",
+                Long.class, club_id);
+        for (long user_id : subscribers)
+            subscriptionChanged(user_id, club_id, deleted);
+    }
+
+    public long currentSeq(long user_id) {
+        List<Long> seq = jdbcTemplate.queryForList("SELECT change_seq FROM users WHERE user_id = ?", Long.class, user_id);
+        return seq.isEmpty() ? 0 : seq.get(0);
+    }
+
+    /**
+     * @return the changes after since, oldest first
+     */
+    public List<Change> changes(long user_id, long since, int limit) {
+        return jdbcTemplate.query(
+                "SELECT entity, entity_key, seq, deleted FROM user_changes WHERE user_id = ? AND seq > ? ORDER BY seq LIMIT ?",
+                (rs, row) -> new Change(rs.getString("entity"), rs.getString("entity_key"), rs.getLong("seq"),
+                        rs.getBoolean("deleted")),
+                user_id, since, limit);
+    }
+
+    static String bookKey(long list_id, long book_id) {
+        return list_id + ":" + book_id;
+    }
+
+    /**
+     * Joins the transaction of the caller, a DataAccessException is left to roll it back.
+     */
+    private void record(long user_id, String entity, String key, boolean deleted) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (jdbcTemplate.update("UPDATE users SET change_seq = change_seq + 1 WHERE user_id = ?", user_id) == 0)
+                return;
+            long seq = jdbcTemplate.queryForObject("SELECT change_seq FROM users WHERE user_id = ?", Long.class, user_id);
+            jdbcTemplate.update("INSERT INTO user_changes (user_id, entity, entity_key, seq, deleted) VALUES (?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE seq = VALUES(seq), deleted = VALUES(deleted)", user_id, entity, key, seq, deleted);
+        });
+    }
+}
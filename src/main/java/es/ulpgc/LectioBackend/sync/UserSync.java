@@ -0,0 +1,143 @@
+package es.ulpgc.LectioBackend.sync;
+
+import es.ulpgc.LectioBackend.model.BookList;
+import es.ulpgc.LectioBackend.model.BookListId;
+import es.ulpgc.LectioBackend.model.Club;
+import es.ulpgc.LectioBackend.model.ClubSubscribers;
+import es.ulpgc.LectioBackend.model.UserList;
+import es.ulpgc.LectioBackend.repository.BookListRepository;
+import es.ulpgc.LectioBackend.repository.ClubRepository;
+import es.ulpgc.LectioBackend.repository.ClubSubscribersRepository;
+import es.ulpgc.LectioBackend.repository.UserListRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a client has to apply to catch up with a user's lists, list entries with their progress and
+ * club subscriptions. The first sync (since=0) sends everything; later ones send the current state of
+ * the rows changed after since and the keys of the ones deleted, at most maxChanges at a time.
+ */
+@Service
+public class UserSync {
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private UserListRepository userListRepository;
+
+    @Autowired
+    private BookListRepository bookListRepository;
+
+    @Autowired
+    private ClubSubscribersRepository clubSubscribersRepository;
+
+    @Autowired
+    private ClubRepository clubRepository;
+
+    @Value("${lectio.sync.max-changes:1000}")
+    private int maxChanges;
+
+    /**
+     * @return null when nothing changed after since
+     */
+    public Map<String, Object> sync(long user_id, long since) {
+        if (since <= 0)
+            return full(user_id);
+
+        List<Change> changes = changeLog.changes(user_id, since, maxChanges + 1);
+        if (changes.isEmpty())
+            // A seq from the future, e.g. of a restored database: start over
+            return (since > changeLog.currentSeq(user_id)) ? full(user_id) : null;
+        boolean more = changes.size() > maxChanges;
+        if (more)
+            changes = changes.subList(0, maxChanges);
+
+        Set<Long> listIds = new HashSet<>();
+        Set<BookListId> bookListIds = new HashSet<>();
+        Set<Long> clubIds = new HashSet<>();
+        List<Long> deletedLists = new ArrayList<>();
+        List<BookListId> deletedBooks = new ArrayList<>();
+        List<Long> deletedClubs = new ArrayList<>();
+        for (Change change : changes) {
+            switch (change.getEntity()) {
+                case ChangeLog.LIST:
+                    (change.isDeleted() ? deletedLists : listIds).add(Long.parseLong(change.getKey()));
+                    break;
+                case ChangeLog.BOOK:
+                    String[] key = change.getKey().split(":");
+                    BookListId id = new BookListId(Long.parseLong(key[0]), Long.parseLong(key[1]));
+                    if (change.isDeleted())
+                        deletedBooks.add(id);
+                    else
+                        bookListIds.add(id);
+                    break;
+                case ChangeLog.CLUB:
+                    (change.isDeleted() ? deletedClubs : clubIds).add(Long.parseLong(change.getKey()));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Rows deleted without a change of their own are reported as deleted too
+        List<UserList> lists = userListRepository.findAllById(listIds);
+        lists.forEach(list -> listIds.remove(list.getList_id()));
+        deletedLists.addAll(listIds);
+        List<BookList> books = bookListRepository.findAllById(bookListIds);
+        books.forEach(book -> bookListIds.remove(book.getBookListId()));
+        deletedBooks.addAll(bookListIds);
+        List<Club> clubs = clubRepository.findAllById(clubIds);
+        clubs.forEach(club -> clubIds.remove(club.getId()));
+        deletedClubs.addAll(clubIds);
+
+        Map<String, Object> sync = new LinkedHashMap<>();
+        sync.put("seq", changes.get(changes.size() - 1).getSeq());
+        sync.put("full", false);
+        sync.put("more", more);
+        putIfAny(sync, "lists", lists);
+        putIfAny(sync, "books", books);
+        putIfAny(sync, "clubs", clubs);
+        Map<String, Object> deleted = new LinkedHashMap<>();
+        putIfAny(deleted, "lists", deletedLists);
+        putIfAny(deleted, "books", deletedBooks);
+        putIfAny(deleted, "clubs", deletedClubs);
+        if (!deleted.isEmpty())
+            sync.put("deleted", deleted);
+        return sync;
+    }
+
+    private Map<String, Object> full(long user_id) {
+        // seq is read first: whatever changes while the rows are read comes again in the next sync
+        long seq = changeLog.currentSeq(user_id);
+        List<UserList> lists = userListRepository.findByUserId(user_id);
+        List<BookList> books = new ArrayList<>();
+        for (UserList list : lists)
+            books.addAll(bookListRepository.getBookListByListId(list.getList_id()));
+        List<Long> clubIds = new ArrayList<>();
+        for (ClubSubscribers subscription : clubSubscribersRepository.findClubsSubscribed(user_id))
+            clubIds.add(subscription.getClubSubscribersId().getClub_id());
+
+        Map<String, Object> sync = new LinkedHashMap<>();
+        sync.put("seq", seq);
+        sync.put("full", true);
+        sync.put("more", false);
+        sync.put("lists", lists);
+        sync.put("books", books);
+        sync.put("clubs", clubRepository.findAllById(clubIds));
+        return sync;
+    }
+
+    private static void putIfAny(Map<String, Object> map, String name, List<?> values) {
+        if (values != null && !values.isEmpty())
+            map.put(name, values);
+    }
+}
@@ -0,0 +1,171 @@
+package es.ulpgc.LectioBackend.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing long to double map without boxing. Not thread safe.
+ */
+public class LongDoubleHashMap {
+
+    public interface Consumer {
+        void accept(long key, double value);
+    }
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private double[] values;
+    private int mask;
+    private int size;
+
+    public LongDoubleHashMap() {
+        this(8);
+    }
+
+    public LongDoubleHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double get(long key) {
+        int slot = find(key);
+        return (slot < 0) ? 0 : values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return the new value
+     */
+    public double addTo(long key, double delta) {
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > (mask + 1) * 3 / 4)
+            rehash((mask + 1) << 1);
+        return delta;
+    }
+
+    public void put(long key, double value) {
+        int slot = find(key);
+        if (slot >= 0)
+            values[slot] = value;
+        else
+            addTo(key, value);
+    }
+
+    public double remove(long key) {
+        int slot = find(key);
+        if (slot < 0)
+            return 0;
+        double value = values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    /**
+     * Multiplies every value by factor.
+     */
+    public void scale(double factor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE)
+                values[slot] *= factor;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE)
+                consumer.accept(keys[slot], values[slot]);
+        }
+    }
+
+    public long[] keys() {
+        long[] result = new long[size];
+        int i = 0;
+        for (long key : keys) {
+            if (key != FREE)
+                result[i++] = key;
+        }
+        return result;
+    }
+
+    private int find(long key) {
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void removeSlot(int slot) {
+        size--;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = FREE;
+        values[hole] = 0;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != FREE)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new double[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+}
@@ -0,0 +1,164 @@
+package es.ulpgc.LectioBackend.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing long to int map without boxing. Entries whose value drops to zero are removed.
+ * Not thread safe.
+ */
+public class LongIntHashMap {
+
+    public interface Consumer {
+        void accept(long key, int value);
+    }
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public LongIntHashMap() {
+        this(8);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(long key) {
+        int slot = find(key);
+        return (slot < 0) ? 0 : values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Adds delta to the value of key, removing the entry when the result is zero.
+     *
+     * @return the new value
+     */
+    public int addTo(long key, int delta) {
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                int value = values[slot] + delta;
+                if (value == 0)
+                    removeSlot(slot);
+                else
+                    values[slot] = value;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (delta == 0)
+            return 0;
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > (mask + 1) * 3 / 4)
+            rehash((mask + 1) << 1);
+        return delta;
+    }
+
+    public void put(long key, int value) {
+        addTo(key, value - get(key));
+    }
+
+    public int remove(long key) {
+        int slot = find(key);
+        if (slot < 0)
+            return 0;
+        int value = values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    public void addAll(LongIntHashMap other) {
+        other.forEach(this::addTo);
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE)
+                consumer.accept(keys[slot], values[slot]);
+        }
+    }
+
+    public long[] keys() {
+        long[] result = new long[size];
+        int i = 0;
+        for (long key : keys) {
+            if (key != FREE)
+                result[i++] = key;
+        }
+        return result;
+    }
+
+    private int find(long key) {
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void removeSlot(int slot) {
+        size--;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = FREE;
+        values[hole] = 0;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != FREE)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+}
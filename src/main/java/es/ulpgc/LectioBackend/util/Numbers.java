@@ -0,0 +1,33 @@
+package es.ulpgc.LectioBackend.util;
+
+/**
+ * Checks done before parsing, so text that isn't a number never costs a NumberFormatException.
+ */
+public final class Numbers {
+
+    private static final String MAX_LONG = Long.toString(Long.MAX_VALUE);
+    private static final String MIN_LONG = Long.toString(Long.MIN_VALUE).substring(1);
+
+    private Numbers() {
+    }
+
+    /**
+     * @return whether Long.parseLong accepts value
+     */
+    public static boolean isLong(String value) {
+        if (value == null || value.isEmpty())
+            return false;
+        char sign = value.charAt(0);
+        int start = (sign == '-' || sign == '+') ? 1 : 0;
+        int digits = value.length() - start;
+        if (digits == 0 || digits > MAX_LONG.length())
+            return false;
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        // Same length as the limit: digit strings compare like the numbers
+        return digits < MAX_LONG.length() || value.substring(start).compareTo(sign == '-' ? MIN_LONG : MAX_LONG) <= 0;
+    }
+}
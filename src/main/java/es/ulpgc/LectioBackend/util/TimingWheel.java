@@ -0,0 +1,150 @@
+package es.ulpgc.LectioBackend.util;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel of long ids: LEVELS wheels of 64 slots, where a slot of level l spans
+ * 64^l ticks. Scheduling is O(1), it appends the id to the slot of the lowest level that still
+ * tells its tick apart from the current one; slots of the upper levels are moved down as time
+ * reaches them. Cancelled and rescheduled ids are left in their slots and skipped when reached.
+ * Not thread safe.
+ */
+public class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 4;
+
+    private final long origin;
+    private final long tickMillis;
+
+    private final Bucket[][] wheels = new Bucket[LEVELS][SLOTS];
+    private final Bucket overflow = new Bucket();
+    private final LongIntHashMap deadlines = new LongIntHashMap();
+
+    // Every tick up to now has been processed
+    private int now;
+
+    public TimingWheel(long origin, long tickMillis) {
+        this.origin = origin;
+        this.tickMillis = tickMillis;
+        for (Bucket[] wheel : wheels) {
+            for (int slot = 0; slot < SLOTS; slot++)
+                wheel[slot] = new Bucket();
+        }
+    }
+
+    /**
+     * Schedules id at time, replacing its previous deadline. Past times fire on the next tick.
+     */
+    public void schedule(long id, long time) {
+        long tick = Math.max(now + 1L, (time - origin + tickMillis - 1) / tickMillis);
+        if (tick > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Deadline too far away: " + time);
+        deadlines.put(id, (int) tick);
+        place(id, (int) tick);
+    }
+
+    public void cancel(long id) {
+        deadlines.remove(id);
+    }
+
+    public boolean isScheduled(long id) {
+        return deadlines.containsKey(id);
+    }
+
+    public int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Moves the wheel to time.
+     *
+     * @return ids whose deadline is at or before time, in deadline order
+     */
+    public long[] advance(long time) {
+        long target = Math.min(Integer.MAX_VALUE, (time - origin) / tickMillis);
+        Bucket expired = new Bucket();
+        while (now < target) {
+            now++;
+            cascade();
+            Bucket bucket = wheels[0][now & (SLOTS - 1)];
+            for (int i = 0; i < bucket.size; i++) {
+                long id = bucket.ids[i];
+                if (bucket.ticks[i] == now && deadlines.get(id) == now) {
+                    deadlines.remove(id);
+                    expired.add(id, now);
+                }
+            }
+            bucket.clear();
+        }
+        return Arrays.copyOf(expired.ids, expired.size);
+    }
+
+    /**
+     * When now starts a new slot of an upper level, spreads that slot over the levels below.
+     */
+    private void cascade() {
+        int level = 1;
+        while (level < LEVELS && (now & ((1 << (BITS * level)) - 1)) == 0)
+            level++;
+        if (level == LEVELS && (now & ((1L << (BITS * LEVELS)) - 1)) == 0)
+            replace(overflow);
+        for (int l = level - 1; l >= 1; l--)
+            replace(wheels[l][(now >>> (BITS * l)) & (SLOTS - 1)]);
+    }
+
+    private void replace(Bucket bucket) {
+        int size = bucket.size;
+        long[] ids = bucket.ids;
+        int[] ticks = bucket.ticks;
+        bucket.detach();
+        for (int i = 0; i < size; i++) {
+            if (deadlines.get(ids[i]) == ticks[i])
+                place(ids[i], ticks[i]);
+        }
+    }
+
+    private void place(long id, int tick) {
+        int difference = tick ^ now;
+        for (int level = 0; level < LEVELS; level++) {
+            if ((difference >>> (BITS * (level + 1))) == 0) {
+                wheels[level][(tick >>> (BITS * level)) & (SLOTS - 1)].add(id, tick);
+                return;
+            }
+        }
+        overflow.add(id, tick);
+    }
+
+    private static class Bucket {
+        long[] ids = new long[0];
+        int[] ticks = new int[0];
+        int size;
+
+        void add(long id, int tick) {
+            if (size == ids.length) {
+                int capacity = Math.max(4, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                ticks = Arrays.copyOf(ticks, capacity);
+            }
+            ids[size] = id;
+            ticks[size] = tick;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+            if (ids.length > 1024)
+                detach();
+        }
+
+        /**
+         * Empties the bucket leaving the old arrays to whoever still reads them.
+         */
+        void detach() {
+            ids = new long[0];
+            ticks = new int[0];
+            size = 0;
+        }
+    }
+}
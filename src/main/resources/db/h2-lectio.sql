@@ -0,0 +1,130 @@
+-- Schema of database.sql for the embedded H2 databases of the "replicas" profile.
+-- Runs on every new connection, so it must stay idempotent.
+
+CREATE TABLE IF NOT EXISTS users (
+  user_id int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  additional varchar(255) DEFAULT NULL,
+  email varchar(255) NOT NULL UNIQUE,
+  first_name varchar(255) NOT NULL,
+  last_name varchar(255) NOT NULL,
+  photo varchar(255) DEFAULT NULL,
+  role varchar(255) NOT NULL,
+  password varchar(255) NOT NULL,
+  change_seq bigint NOT NULL DEFAULT 0,
+  deleted_at timestamp NULL DEFAULT NULL,
+  UNIQUE (first_name, last_name)
+);
+
+CREATE INDEX IF NOT EXISTS users_deleted_at ON users (deleted_at);
+
+CREATE TABLE IF NOT EXISTS genres (
+  id int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  name varchar(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS books (
+  id int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  title varchar(255) NOT NULL,
+  author varchar(255) NOT NULL,
+  publisher varchar(255) NOT NULL,
+  pages varchar(255) NOT NULL,
+  isbn varchar(20) NOT NULL UNIQUE,
+  genres varchar(255) NOT NULL,
+  synopsis varchar(20000) DEFAULT 'There are no synopsis.',
+  num_pages int NULL
+);
+
+CREATE TABLE IF NOT EXISTS book_genres (
+  book_id int NOT NULL REFERENCES books (id) ON DELETE CASCADE,
+  genre_id int NOT NULL REFERENCES genres (id) ON DELETE CASCADE,
+  PRIMARY KEY (book_id, genre_id)
+);
+
+CREATE TABLE IF NOT EXISTS userlists (
+  list_id int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  user_id int NOT NULL DEFAULT 0 REFERENCES users (user_id),
+  list_name varchar(255) NOT NULL DEFAULT '',
+  list_description varchar(255) DEFAULT NULL,
+  UNIQUE (user_id, list_name)
+);
+
+CREATE TABLE IF NOT EXISTS booklists (
+  book_id int NOT NULL DEFAULT 0 REFERENCES books (id),
+  list_id int NOT NULL REFERENCES userlists (list_id),
+  progress int NOT NULL DEFAULT 0,
+  PRIMARY KEY (book_id, list_id)
+);
+
+CREATE TABLE IF NOT EXISTS club (
+  id int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  club_name varchar(255) NOT NULL UNIQUE,
+  club_description varchar(255) NOT NULL,
+  book_id int DEFAULT NULL REFERENCES books (id) ON DELETE CASCADE,
+  creator int NOT NULL DEFAULT 0 REFERENCES users (user_id),
+  read_time date DEFAULT NULL,
+  num_subscribers int NOT NULL DEFAULT 0,
+  deleted_at timestamp NULL DEFAULT NULL
+);
+
+CREATE INDEX IF NOT EXISTS club_deleted_at ON club (deleted_at);
+
+CREATE TABLE IF NOT EXISTS club_punctuation (
+  id int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  user_id int NOT NULL REFERENCES users (user_id) ON DELETE CASCADE,
+  club_id int NOT NULL REFERENCES club (id) ON DELETE CASCADE,
+  punctuation int NOT NULL,
+  UNIQUE (user_id, club_id)
+);
+
+CREATE TABLE IF NOT EXISTS club_subscribers (
+  club_id int NOT NULL REFERENCES club (id) ON DELETE CASCADE,
+  user_id int NOT NULL REFERENCES users (user_id),
+  PRIMARY KEY (club_id, user_id)
+);
+
+CREATE TABLE IF NOT EXISTS reviews (
+  id int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  book_id int NOT NULL REFERENCES books (id) ON DELETE CASCADE,
+  user_id int NOT NULL REFERENCES users (user_id) ON DELETE CASCADE,
+  comment varchar(255) NOT NULL,
+  punctuation int NOT NULL,
+  user_name varchar(255) DEFAULT NULL,
+  created_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  UNIQUE (book_id, user_id)
+);
+
+CREATE TABLE IF NOT EXISTS user_changes (
+  user_id int NOT NULL,
+  entity varchar(16) NOT NULL,
+  entity_key varchar(64) NOT NULL,
+  seq bigint NOT NULL,
+  deleted boolean NOT NULL,
+  PRIMARY KEY (user_id, entity, entity_key)
+);
+
+CREATE INDEX IF NOT EXISTS user_changes_seq ON user_changes (user_id, seq);
+
+MERGE INTO users (user_id, additional, email, first_name, last_name, photo, role, password) KEY (user_id) VALUES
+	(21, NULL, 'a.s@email.com', 'alvaro', 'suarez', NULL, 'Student', '$2a$10$jvPMqIomjLhUGz1Y.q8XTOcVdt64qOelHUZw9SAPuPj6ML7pBwIHq'),
+	(31, NULL, 'es@email.com', 'evan', 'sanz', NULL, 'Student', '$2a$10$M2yfiweQ9hZ8Gx6lU0Z/9OpcT.9jN89dJ9FmyyDappS65oBeMkV3S'),
+	(32, NULL, 'edu@email.com', 'edu', 'rodriguez', NULL, 'Student', '$2a$10$4N9zW1on9MBJOhNMFi5/t.r1tynnWux5ls85w/CpglLmlg2M7pqUq'),
+	(33, NULL, 'jose@email.com', 'Jose', 'Gonzalez', NULL, 'Librarian', '$2a$10$.V7ImD8VXqmlnfb36ikpy.izZgrRC4pZwcaGSv1Ldig8FcV3m/uum');
+
+MERGE INTO genres (id, name) KEY (id) VALUES
+	(1, 'Science fiction'),
+	(2, 'Fantasy'),
+	(3, 'Adventure'),
+	(4, 'Action'),
+	(5, 'Historical fiction');
+
+MERGE INTO books (id, title, author, publisher, pages, isbn, genres, synopsis) KEY (id) VALUES
+	(1, 'Libro', 'Autor', 'Editorial', '6969', '9788448005009', 'Science fiction,Fantasy', 'Sinopsis del libro'),
+	(2, 'Pilotes', 'Misco Jones', 'Editorial', '6969', '97884480067009', 'Science fiction,Adventure', NULL),
+	(3, 'Juega', 'Misco Jones', 'Editorial', '6969', '97884420067009', 'Science fiction,Adventure', NULL),
+	(4, 'Una breve historia de casi todo', 'Devil Bryson', 'Editorial', '639', '97884421267009', 'Science fiction,Adventure', NULL),
+	(5, 'La teroia del todo', 'Stephen Hawking', 'Editorial', '639', '89884421267009', 'Science fiction,Adventure', NULL),
+	(6, 'Padre rico, Padre pobre', 'Kiyosaki', 'Editorial', '639', '89894421267009', 'Science fiction,Adventure', NULL),
+	(7, 'Rimas y leyendas', 'Gustavo Adolfo Becquer', 'Austral', '345', '89894421266509', 'Science fiction,Adventure', NULL),
+	(8, 'Delirios de grandeza', 'George Orwell', 'La Santillana', '362', '9781234567897', 'Action,Adventure,Science fiction,Historical fiction', 'Es una novela profunda que representa, como un ser cae en los deseos del poder.');
+
+UPDATE books SET num_pages = CAST(pages AS int) WHERE num_pages IS NULL;